@@ -0,0 +1,25 @@
+package eu.inloop.viewmodel.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Saves the ViewModel field into the instance state and restores it from there. The annotation processor generates
+ * a {@code <ViewModel>_StateBinding} class next to the ViewModel, call its {@code save(viewModel, bundle)} from
+ * {@code onSaveInstanceState(Bundle)} and {@code restore(viewModel, savedInstanceState)} from {@code onCreate(Bundle, Bundle)}.
+ * <p>
+ * The field must not be private, static or final. Supported types are primitives, String, CharSequence, Bundle,
+ * Parcelable, arrays of primitives, String, CharSequence and Parcelable, lists of String, Integer, CharSequence and
+ * Parcelable, and Serializable.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface SaveState {
+
+    /**
+     * @return key in the Bundle, {@code <ViewModel class simple name>.<field name>} if empty
+     */
+    String value() default "";
+}
@@ -0,0 +1,15 @@
+package eu.inloop.viewmodel.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a {@code <ViewModel>_Factory} class next to the ViewModel. Its {@code INSTANCE} is a
+ * {@code CreateViewModelCallback} creating the ViewModel with its no-argument constructor.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface ViewModelFactory {
+}
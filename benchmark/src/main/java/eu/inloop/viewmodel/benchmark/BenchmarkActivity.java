@@ -0,0 +1,9 @@
+package eu.inloop.viewmodel.benchmark;
+
+import eu.inloop.viewmodel.base.ViewModelBaseEmptyActivity;
+
+/**
+ * Host of the benchmarked screens, provides the {@link eu.inloop.viewmodel.ViewModelProvider}.
+ */
+public class BenchmarkActivity extends ViewModelBaseEmptyActivity {
+}
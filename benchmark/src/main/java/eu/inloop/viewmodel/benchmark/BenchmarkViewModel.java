@@ -0,0 +1,15 @@
+package eu.inloop.viewmodel.benchmark;
+
+import eu.inloop.viewmodel.AbstractViewModel;
+import eu.inloop.viewmodel.IView;
+import eu.inloop.viewmodel.base.CreateViewModelCallback;
+
+public class BenchmarkViewModel extends AbstractViewModel<IView> {
+
+    public static final CreateViewModelCallback<IView, BenchmarkViewModel> FACTORY = new CreateViewModelCallback<IView, BenchmarkViewModel>() {
+        @Override
+        public BenchmarkViewModel onViewModelRequested() {
+            return new BenchmarkViewModel();
+        }
+    };
+}
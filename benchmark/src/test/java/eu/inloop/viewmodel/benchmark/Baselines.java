@@ -0,0 +1,83 @@
+package eu.inloop.viewmodel.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Results of a release, in nanoseconds per operation. The baseline file is written by running the benchmarks
+ * with {@code -PrecordBaseline} on the build machine and checked in, later runs fail when an operation gets
+ * slower than {@link #TOLERANCE} times its baseline. Recording keeps the slower of the recorded and the measured
+ * time, so recording several runs captures their spread; delete the file first to record from scratch. Every
+ * run writes its results next to the test reports.
+ */
+final class Baselines {
+
+    private static final double TOLERANCE = 1.5;
+
+    private static final Properties sBaseline = load(System.getProperty("benchmark.baseline")); //NON-NLS
+    private static final Properties sResults = new Properties();
+
+    private Baselines() {
+    }
+
+    static synchronized void check(@NonNull final String name, final double nanosPerOperation) throws IOException {
+        final String value = String.format(Locale.US, "%.1f", nanosPerOperation); //NON-NLS
+        sResults.setProperty(name, value);
+        store(System.getProperty("benchmark.results"), sResults); //NON-NLS
+        if (Boolean.getBoolean("benchmark.recordBaseline")) { //NON-NLS
+            final String recorded = sBaseline.getProperty(name);
+            if (recorded == null || nanosPerOperation > Double.parseDouble(recorded)) {
+                sBaseline.setProperty(name, value);
+            }
+            store(System.getProperty("benchmark.baseline"), sBaseline); //NON-NLS
+            return;
+        }
+        final String baseline = sBaseline.getProperty(name);
+        if (baseline != null && nanosPerOperation > Double.parseDouble(baseline) * TOLERANCE) {
+            throw new AssertionError(name + " regressed: " + value + " ns/op, baseline " + baseline + " ns/op"); //NON-NLS
+        }
+    }
+
+    @NonNull
+    private static Properties load(final String path) {
+        final Properties properties = new Properties();
+        if (path == null || !new File(path).isFile()) {
+            return properties;
+        }
+        try (InputStream input = new FileInputStream(path)) {
+            properties.load(input);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Can't read the baseline " + path, ex); //NON-NLS
+        }
+        return properties;
+    }
+
+    private static void store(final String path, @NonNull final Properties properties) throws IOException {
+        if (path == null) {
+            return;
+        }
+        final File file = new File(path);
+        final File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory); //NON-NLS
+        }
+        // sorted and without the timestamp comment of Properties.store(), so re-recorded baselines diff cleanly
+        final StringBuilder content = new StringBuilder("# ns/op\n"); //NON-NLS
+        for (final String name : new TreeSet<>(properties.stringPropertyNames())) {
+            content.append(name.replace(" ", "\\ ").replace(":", "\\:").replace("=", "\\="))
+                    .append('=').append(properties.getProperty(name)).append('\n');
+        }
+        try (OutputStream output = new FileOutputStream(file)) {
+            output.write(content.toString().getBytes("ISO-8859-1")); //NON-NLS
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package eu.inloop.viewmodel.benchmark;
+
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Minimal timing loop. Each round runs a batch of operations and reports the nanoseconds spent on the
+ * measured part, the median of the measured rounds is compared against the recorded {@link Baselines} and
+ * written to the results file.
+ */
+final class Benchmark {
+
+    interface Batch {
+
+        /**
+         * Runs the operations of one round.
+         *
+         * @return nanoseconds spent in the measured operations, setup done in the batch is not counted
+         */
+        long run(int operations) throws Exception;
+    }
+
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int MEASURED_ROUNDS = 15;
+
+    private Benchmark() {
+    }
+
+    /**
+     * @param name       key of the result in the baseline
+     * @param operations operations per round
+     * @return median time of one operation in nanoseconds
+     */
+    static double measure(@NonNull final String name, final int operations, @NonNull final Batch batch) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            batch.run(operations);
+        }
+        final double[] rounds = new double[MEASURED_ROUNDS];
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            rounds[i] = batch.run(operations) / (double) operations;
+        }
+        Arrays.sort(rounds);
+        final double median = rounds[MEASURED_ROUNDS / 2];
+        Baselines.check(name, median);
+        return median;
+    }
+}
@@ -0,0 +1,96 @@
+package eu.inloop.viewmodel.benchmark;
+
+import android.os.Bundle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import eu.inloop.viewmodel.IView;
+import eu.inloop.viewmodel.ViewModelHelper;
+
+/**
+ * Cost of the lifecycle calls a screen makes on its {@link ViewModelHelper}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ViewModelHelperBenchmark {
+
+    private static final int OPERATIONS = 1000;
+
+    private final IView mView = new IView() {
+    };
+    private final Bundle mOutState = new Bundle();
+
+    private BenchmarkActivity mActivity;
+    private BenchmarkActivity mFinishingActivity;
+
+    @Before
+    public void setUp() {
+        mActivity = Robolectric.buildActivity(BenchmarkActivity.class).setup().get();
+        mFinishingActivity = Robolectric.buildActivity(BenchmarkActivity.class).setup().get();
+        // screens of a finishing activity remove their ViewModel in onDestroy
+        mFinishingActivity.finish();
+    }
+
+    @After
+    public void tearDown() {
+        mActivity.getViewModelProvider().removeAllViewModels();
+        mFinishingActivity.getViewModelProvider().removeAllViewModels();
+    }
+
+    /**
+     * A new screen: the ViewModel is created, bound, started, stopped, saved and removed.
+     */
+    @Test
+    public void screenLifecycle() throws Exception {
+        Benchmark.measure("ViewModelHelper screen lifecycle", OPERATIONS, new Benchmark.Batch() { //NON-NLS
+            @Override
+            public long run(int operations) {
+                final long start = System.nanoTime();
+                for (int i = 0; i < operations; i++) {
+                    final ViewModelHelper<IView, BenchmarkViewModel> helper = new ViewModelHelper<>();
+                    helper.onCreate(mFinishingActivity, null, BenchmarkViewModel.FACTORY, null);
+                    helper.setView(mView);
+                    helper.onStart();
+                    helper.onStop();
+                    mOutState.clear();
+                    helper.onSaveInstanceState(mOutState);
+                    helper.onDestroy(mFinishingActivity);
+                }
+                return System.nanoTime() - start;
+            }
+        });
+    }
+
+    /**
+     * A recreated screen after a configuration change: the cached ViewModel is looked up and bound again.
+     */
+    @Test
+    public void rotation() throws Exception {
+        final ViewModelHelper<IView, BenchmarkViewModel> first = new ViewModelHelper<>();
+        first.onCreate(mActivity, null, BenchmarkViewModel.FACTORY, null);
+        first.onSaveInstanceState(mOutState);
+        first.onDestroy(mActivity);
+        final Bundle savedState = new Bundle(mOutState);
+        Benchmark.measure("ViewModelHelper rotation", OPERATIONS, new Benchmark.Batch() { //NON-NLS
+            @Override
+            public long run(int operations) {
+                final long start = System.nanoTime();
+                for (int i = 0; i < operations; i++) {
+                    final ViewModelHelper<IView, BenchmarkViewModel> helper = new ViewModelHelper<>();
+                    helper.onCreate(mActivity, savedState, BenchmarkViewModel.FACTORY, null);
+                    helper.setView(mView);
+                    helper.onStart();
+                    helper.onStop();
+                    mOutState.clear();
+                    helper.onSaveInstanceState(mOutState);
+                    helper.onDestroy(mActivity);
+                }
+                return System.nanoTime() - start;
+            }
+        });
+    }
+}
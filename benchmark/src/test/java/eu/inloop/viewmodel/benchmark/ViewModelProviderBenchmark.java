@@ -0,0 +1,214 @@
+package eu.inloop.viewmodel.benchmark;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.Robolectric;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import eu.inloop.viewmodel.ViewModelProvider;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Cost of the {@link ViewModelProvider} cache operations with 1, 100 and 10,000 cached ViewModels.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+public class ViewModelProviderBenchmark {
+
+    private static final int OPERATIONS = 1000;
+    private static final int THREADS = 4;
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0} models")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{{1}, {100}, {10000}});
+    }
+
+    private final int mModelCount;
+
+    private ViewModelProvider mProvider;
+    // identifiers not used by the cached ViewModels
+    private long mNextScreenId;
+
+    public ViewModelProviderBenchmark(final int modelCount) {
+        mModelCount = modelCount;
+    }
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.buildActivity(BenchmarkActivity.class).setup().get().getViewModelProvider();
+        for (int i = 1; i <= mModelCount; i++) {
+            mProvider.getViewModel(i, BenchmarkViewModel.FACTORY);
+        }
+        mNextScreenId = mModelCount + 1;
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.removeAllViewModels();
+    }
+
+    @Test
+    public void getViewModelHit() throws Exception {
+        Benchmark.measure(name("getViewModel hit"), OPERATIONS, new Benchmark.Batch() { //NON-NLS
+            @Override
+            public long run(int operations) {
+                final long start = System.nanoTime();
+                for (int i = 0; i < operations; i++) {
+                    mProvider.getViewModel(i % mModelCount + 1, BenchmarkViewModel.FACTORY);
+                }
+                return System.nanoTime() - start;
+            }
+        });
+    }
+
+    @Test
+    public void getViewModelMiss() throws Exception {
+        Benchmark.measure(name("getViewModel miss"), OPERATIONS, new Benchmark.Batch() { //NON-NLS
+            @Override
+            public long run(int operations) {
+                final long firstScreenId = mNextScreenId;
+                mNextScreenId += operations;
+                final long start = System.nanoTime();
+                for (int i = 0; i < operations; i++) {
+                    mProvider.getViewModel(firstScreenId + i, BenchmarkViewModel.FACTORY);
+                }
+                final long elapsed = System.nanoTime() - start;
+                removeRange(firstScreenId, operations);
+                return elapsed;
+            }
+        });
+    }
+
+    @Test
+    public void remove() throws Exception {
+        Benchmark.measure(name("remove"), OPERATIONS, new Benchmark.Batch() { //NON-NLS
+            @Override
+            public long run(int operations) {
+                final long firstScreenId = mNextScreenId;
+                mNextScreenId += operations;
+                for (int i = 0; i < operations; i++) {
+                    mProvider.getViewModel(firstScreenId + i, BenchmarkViewModel.FACTORY);
+                }
+                final long start = System.nanoTime();
+                removeRange(firstScreenId, operations);
+                return System.nanoTime() - start;
+            }
+        });
+    }
+
+    @Test
+    public void removeAllViewModels() throws Exception {
+        Benchmark.measure(name("removeAllViewModels"), 1, new Benchmark.Batch() { //NON-NLS
+            @Override
+            public long run(int operations) {
+                long elapsed = 0;
+                for (int i = 0; i < operations; i++) {
+                    for (int id = 1; id <= mModelCount; id++) {
+                        mProvider.getViewModel(id, BenchmarkViewModel.FACTORY);
+                    }
+                    final long start = System.nanoTime();
+                    mProvider.removeAllViewModels();
+                    elapsed += System.nanoTime() - start;
+                }
+                return elapsed;
+            }
+        });
+    }
+
+    @Test
+    public void getViewModelHitContended() throws Exception {
+        assumeEnoughCores();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            Benchmark.measure(name("getViewModel hit, " + THREADS + " threads"), OPERATIONS * THREADS, new Benchmark.Batch() { //NON-NLS
+                @Override
+                public long run(int operations) throws Exception {
+                    return runConcurrently(executor, operations / THREADS, false);
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void getViewModelMissContended() throws Exception {
+        assumeEnoughCores();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            Benchmark.measure(name("getViewModel miss, " + THREADS + " threads"), OPERATIONS * THREADS, new Benchmark.Batch() { //NON-NLS
+                @Override
+                public long run(int operations) throws Exception {
+                    return runConcurrently(executor, operations / THREADS, true);
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * With fewer cores than threads the lookups don't run concurrently and the result depends on the scheduler.
+     */
+    private static void assumeEnoughCores() {
+        assumeTrue("needs " + THREADS + " cores", Runtime.getRuntime().availableProcessors() >= THREADS); //NON-NLS
+    }
+
+    /**
+     * Runs the lookups on all threads at once.
+     *
+     * @param miss true to look up identifiers not cached yet, each thread its own range
+     * @return nanoseconds until the last thread finished
+     */
+    private long runConcurrently(final ExecutorService executor, final int operationsPerThread, final boolean miss) throws Exception {
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final long firstScreenId = mNextScreenId;
+        mNextScreenId += (long) operationsPerThread * THREADS;
+        @SuppressWarnings("unchecked")
+        final Future<Void>[] futures = new Future[THREADS];
+        for (int thread = 0; thread < THREADS; thread++) {
+            final long threadFirstScreenId = firstScreenId + (long) thread * operationsPerThread;
+            futures[thread] = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    startSignal.await();
+                    for (int i = 0; i < operationsPerThread; i++) {
+                        final long screenId = miss ? threadFirstScreenId + i : i % mModelCount + 1;
+                        mProvider.getViewModel(screenId, BenchmarkViewModel.FACTORY);
+                    }
+                    return null;
+                }
+            });
+        }
+        final long start = System.nanoTime();
+        startSignal.countDown();
+        for (final Future<Void> future : futures) {
+            future.get();
+        }
+        final long elapsed = System.nanoTime() - start;
+        if (miss) {
+            removeRange(firstScreenId, operationsPerThread * THREADS);
+        }
+        return elapsed;
+    }
+
+    private void removeRange(final long firstScreenId, final int count) {
+        for (int i = 0; i < count; i++) {
+            mProvider.remove(firstScreenId + i);
+        }
+    }
+
+    private String name(final String operation) {
+        return "ViewModelProvider." + operation + " [" + mModelCount + " models]"; //NON-NLS
+    }
+}
@@ -0,0 +1,161 @@
+package eu.inloop.viewmodel.compiler;
+
+import java.util.List;
+
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Typed Bundle put/get method pair used to save a field of a given type.
+ */
+final class BundleAccessor {
+
+    /**
+     * Suffix of the Bundle methods, for example "Int" for putInt/getInt.
+     */
+    final String mName;
+    /**
+     * The value returned by the getter has to be cast to the field type.
+     */
+    final boolean mCast;
+    /**
+     * Element type of a field declared as {@link List}, which is copied into an ArrayList unless it already is one.
+     */
+    final TypeMirror mListElementType;
+
+    private BundleAccessor(final String name, final boolean cast, final TypeMirror listElementType) {
+        mName = name;
+        mCast = cast;
+        mListElementType = listElementType;
+    }
+
+    private static BundleAccessor of(final String name) {
+        return new BundleAccessor(name, false, null);
+    }
+
+    /**
+     * @return the accessor for the field type, or null if the type can't be put into a Bundle
+     */
+    static BundleAccessor forType(final TypeMirror type, final Elements elements, final Types types) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return of("Boolean");
+            case BYTE:
+                return of("Byte");
+            case SHORT:
+                return of("Short");
+            case CHAR:
+                return of("Char");
+            case INT:
+                return of("Int");
+            case LONG:
+                return of("Long");
+            case FLOAT:
+                return of("Float");
+            case DOUBLE:
+                return of("Double");
+            case ARRAY:
+                return forArrayType((ArrayType) type, elements, types);
+            case DECLARED:
+                return forDeclaredType((DeclaredType) type, elements, types);
+            default:
+                return null;
+        }
+    }
+
+    private static BundleAccessor forArrayType(final ArrayType type, final Elements elements, final Types types) {
+        final TypeMirror componentType = type.getComponentType();
+        switch (componentType.getKind()) {
+            case BOOLEAN:
+                return of("BooleanArray");
+            case BYTE:
+                return of("ByteArray");
+            case SHORT:
+                return of("ShortArray");
+            case CHAR:
+                return of("CharArray");
+            case INT:
+                return of("IntArray");
+            case LONG:
+                return of("LongArray");
+            case FLOAT:
+                return of("FloatArray");
+            case DOUBLE:
+                return of("DoubleArray");
+            case DECLARED:
+                if (isType(componentType, "java.lang.String", elements, types)) {
+                    return of("StringArray");
+                }
+                if (isType(componentType, "java.lang.CharSequence", elements, types)) {
+                    return of("CharSequenceArray");
+                }
+                // getParcelableArray() returns Parcelable[], which can't be cast to an array of a subtype
+                if (isType(componentType, "android.os.Parcelable", elements, types)) {
+                    return of("ParcelableArray");
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private static BundleAccessor forDeclaredType(final DeclaredType type, final Elements elements, final Types types) {
+        if (isType(type, "java.lang.String", elements, types)) {
+            return of("String");
+        }
+        if (isType(type, "java.lang.CharSequence", elements, types)) {
+            return of("CharSequence");
+        }
+        if (isType(type, "android.os.Bundle", elements, types)) {
+            return of("Bundle");
+        }
+        final boolean arrayList = isErasure(type, "java.util.ArrayList", elements, types);
+        if (arrayList || isErasure(type, "java.util.List", elements, types)) {
+            final List<? extends TypeMirror> typeArguments = type.getTypeArguments();
+            if (typeArguments.size() != 1 || typeArguments.get(0).getKind() != TypeKind.DECLARED) {
+                return null;
+            }
+            final TypeMirror elementType = typeArguments.get(0);
+            final String name;
+            if (isType(elementType, "java.lang.String", elements, types)) {
+                name = "StringArrayList";
+            } else if (isType(elementType, "java.lang.Integer", elements, types)) {
+                name = "IntegerArrayList";
+            } else if (isType(elementType, "java.lang.CharSequence", elements, types)) {
+                name = "CharSequenceArrayList";
+            } else if (isSubtype(elementType, "android.os.Parcelable", elements, types)) {
+                name = "ParcelableArrayList";
+            } else {
+                return null;
+            }
+            return new BundleAccessor(name, false, arrayList ? null : elementType);
+        }
+        if (isSubtype(type, "android.os.Parcelable", elements, types)) {
+            return of("Parcelable");
+        }
+        if (isSubtype(type, "java.io.Serializable", elements, types)) {
+            return new BundleAccessor("Serializable", true, null);
+        }
+        return null;
+    }
+
+    private static boolean isType(final TypeMirror type, final String className, final Elements elements, final Types types) {
+        final TypeElement element = elements.getTypeElement(className);
+        return element != null && types.isSameType(type, element.asType());
+    }
+
+    private static boolean isErasure(final TypeMirror type, final String className, final Elements elements, final Types types) {
+        final TypeElement element = elements.getTypeElement(className);
+        return element != null && types.isSameType(types.erasure(type), types.erasure(element.asType()));
+    }
+
+    private static boolean isSubtype(final TypeMirror type, final String className, final Elements elements, final Types types) {
+        final TypeElement element = elements.getTypeElement(className);
+        return element != null && types.isAssignable(type, element.asType());
+    }
+}
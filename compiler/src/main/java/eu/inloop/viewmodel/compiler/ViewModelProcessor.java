@@ -0,0 +1,349 @@
+package eu.inloop.viewmodel.compiler;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+import eu.inloop.viewmodel.annotation.SaveState;
+import eu.inloop.viewmodel.annotation.ViewModelFactory;
+
+/**
+ * Generates {@code <ViewModel>_StateBinding} classes for ViewModels with {@link SaveState} fields and
+ * {@code <ViewModel>_Factory} classes for ViewModels annotated with {@link ViewModelFactory}.
+ */
+public class ViewModelProcessor extends AbstractProcessor {
+
+    private static final String ABSTRACT_VIEW_MODEL = "eu.inloop.viewmodel.AbstractViewModel"; //NON-NLS
+    private static final ClassName CREATE_VIEW_MODEL_CALLBACK = ClassName.get("eu.inloop.viewmodel.base", "CreateViewModelCallback"); //NON-NLS
+    private static final ClassName BUNDLE = ClassName.get("android.os", "Bundle"); //NON-NLS
+    private static final ClassName ARRAY_LIST = ClassName.get(ArrayList.class);
+    private static final String FILE_COMMENT = "Generated code from AndroidViewModel. Do not modify!"; //NON-NLS
+
+    private Elements mElements;
+    private Types mTypes;
+    private Filer mFiler;
+    private Messager mMessager;
+
+    @Override
+    public synchronized void init(final ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        mElements = processingEnv.getElementUtils();
+        mTypes = processingEnv.getTypeUtils();
+        mFiler = processingEnv.getFiler();
+        mMessager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        final Set<String> types = new HashSet<>();
+        types.add(SaveState.class.getCanonicalName());
+        types.add(ViewModelFactory.class.getCanonicalName());
+        return types;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        final TypeElement abstractViewModel = mElements.getTypeElement(ABSTRACT_VIEW_MODEL);
+        if (abstractViewModel == null) {
+            if (!annotations.isEmpty()) {
+                mMessager.printMessage(Diagnostic.Kind.ERROR, ABSTRACT_VIEW_MODEL + " is not on the classpath"); //NON-NLS
+            }
+            return false;
+        }
+
+        final Map<TypeElement, List<VariableElement>> stateFields = new LinkedHashMap<>();
+        for (final VariableElement field : ElementFilter.fieldsIn(roundEnv.getElementsAnnotatedWith(SaveState.class))) {
+            final TypeElement viewModel = (TypeElement) field.getEnclosingElement();
+            if (!isValidStateField(field, viewModel, abstractViewModel)) {
+                continue;
+            }
+            List<VariableElement> fields = stateFields.get(viewModel);
+            if (fields == null) {
+                fields = new ArrayList<>();
+                stateFields.put(viewModel, fields);
+            }
+            fields.add(field);
+        }
+        for (final Map.Entry<TypeElement, List<VariableElement>> entry : stateFields.entrySet()) {
+            writeStateBinding(entry.getKey(), entry.getValue(), abstractViewModel);
+        }
+
+        for (final TypeElement viewModel : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(ViewModelFactory.class))) {
+            writeFactory(viewModel, abstractViewModel);
+        }
+        return true;
+    }
+
+    private boolean isValidStateField(final VariableElement field, final TypeElement viewModel, final TypeElement abstractViewModel) {
+        final Set<Modifier> modifiers = field.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)) {
+            error(field, "@SaveState fields must not be private, static or final"); //NON-NLS
+            return false;
+        }
+        if (!isViewModel(viewModel, abstractViewModel)) {
+            error(field, "@SaveState fields must be declared in a subclass of AbstractViewModel"); //NON-NLS
+            return false;
+        }
+        if (BundleAccessor.forType(field.asType(), mElements, mTypes) == null) {
+            error(field, "@SaveState doesn't support fields of type " + field.asType()); //NON-NLS
+            return false;
+        }
+        return true;
+    }
+
+    private void writeStateBinding(final TypeElement viewModel, final List<VariableElement> fields, final TypeElement abstractViewModel) {
+        final TypeName targetType = TypeName.get(mTypes.erasure(viewModel.asType()));
+        final ClassName superBinding = findSuperclassStateBinding(viewModel, abstractViewModel);
+
+        final TypeSpec.Builder binding = TypeSpec.classBuilder(generatedName(viewModel, "_StateBinding")) //NON-NLS
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addOriginatingElement(viewModel)
+                .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+
+        final MethodSpec.Builder save = MethodSpec.methodBuilder("save") //NON-NLS
+                .addJavadoc("Call from {@code onSaveInstanceState(Bundle)}.\n") //NON-NLS
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(targetType, "target") //NON-NLS
+                .addParameter(BUNDLE, "state"); //NON-NLS
+        final MethodSpec.Builder restore = MethodSpec.methodBuilder("restore") //NON-NLS
+                .addJavadoc("Call from {@code onCreate(Bundle, Bundle)}, does nothing if the state is null.\n") //NON-NLS
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(targetType, "target") //NON-NLS
+                .addParameter(BUNDLE, "state") //NON-NLS
+                .beginControlFlow("if (state == null)") //NON-NLS
+                .addStatement("return") //NON-NLS
+                .endControlFlow();
+        if (superBinding != null) {
+            save.addStatement("$T.save(target, state)", superBinding); //NON-NLS
+            restore.addStatement("$T.restore(target, state)", superBinding); //NON-NLS
+        }
+
+        boolean uncheckedSave = false;
+        final Set<String> keyNames = new HashSet<>();
+        final Map<String, VariableElement> keys = new HashMap<>();
+        for (final VariableElement field : fields) {
+            final BundleAccessor accessor = BundleAccessor.forType(field.asType(), mElements, mTypes);
+            final String fieldName = field.getSimpleName().toString();
+            final String annotatedKey = field.getAnnotation(SaveState.class).value();
+            final String key = annotatedKey.isEmpty() ? viewModel.getSimpleName() + "." + fieldName : annotatedKey;
+            final VariableElement sameKeyField = keys.put(key, field);
+            if (sameKeyField != null) {
+                error(field, "@SaveState key \"" + key + "\" is already used by " + sameKeyField.getSimpleName()); //NON-NLS
+                continue;
+            }
+            // mCount and count map to the same constant
+            final String baseKeyName = keyConstantName(fieldName);
+            String keyName = baseKeyName;
+            for (int suffix = 2; !keyNames.add(keyName); suffix++) {
+                keyName = baseKeyName + "_" + suffix;
+            }
+            binding.addField(FieldSpec.builder(String.class, keyName, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("$S", key)
+                    .build());
+
+            if (accessor.mListElementType != null) {
+                uncheckedSave = true;
+                final TypeName arrayListType = ParameterizedTypeName.get(ARRAY_LIST, TypeName.get(accessor.mListElementType));
+                save.addStatement("state.put$L($N, target.$N == null || target.$N instanceof $T ? ($T) target.$N : new $T<>(target.$N))", //NON-NLS
+                        accessor.mName, keyName, fieldName, fieldName, ARRAY_LIST, arrayListType, fieldName, ARRAY_LIST, fieldName);
+            } else {
+                save.addStatement("state.put$L($N, target.$N)", accessor.mName, keyName, fieldName); //NON-NLS
+            }
+
+            // a missing key keeps the field as it is, the getters without a default value don't box primitives
+            final CodeBlock value = accessor.mCast
+                    ? CodeBlock.of("($T) state.get$L($N)", TypeName.get(field.asType()), accessor.mName, keyName) //NON-NLS
+                    : CodeBlock.of("state.get$L($N)", accessor.mName, keyName); //NON-NLS
+            restore.beginControlFlow("if (state.containsKey($N))", keyName) //NON-NLS
+                    .addStatement("target.$N = $L", fieldName, value) //NON-NLS
+                    .endControlFlow();
+        }
+
+        if (uncheckedSave) {
+            save.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build()); //NON-NLS
+        }
+        binding.addMethod(save.build()).addMethod(restore.build());
+        write(viewModel, binding.build());
+    }
+
+    /**
+     * @return the binding of the nearest superclass with {@link SaveState} fields, or null if there is none
+     */
+    private ClassName findSuperclassStateBinding(final TypeElement viewModel, final TypeElement abstractViewModel) {
+        TypeMirror superclass = viewModel.getSuperclass();
+        while (superclass.getKind() == TypeKind.DECLARED) {
+            final TypeElement superElement = (TypeElement) ((DeclaredType) superclass).asElement();
+            if (superElement.equals(abstractViewModel)) {
+                return null;
+            }
+            for (final VariableElement field : ElementFilter.fieldsIn(superElement.getEnclosedElements())) {
+                if (field.getAnnotation(SaveState.class) != null) {
+                    return ClassName.get(mElements.getPackageOf(superElement).getQualifiedName().toString(),
+                            generatedName(superElement, "_StateBinding")); //NON-NLS
+                }
+            }
+            superclass = superElement.getSuperclass();
+        }
+        return null;
+    }
+
+    private void writeFactory(final TypeElement viewModel, final TypeElement abstractViewModel) {
+        if (viewModel.getKind() != ElementKind.CLASS || viewModel.getModifiers().contains(Modifier.ABSTRACT)
+                || viewModel.getModifiers().contains(Modifier.PRIVATE)) {
+            error(viewModel, "@ViewModelFactory classes must be concrete and not private"); //NON-NLS
+            return;
+        }
+        if (viewModel.getNestingKind() == NestingKind.MEMBER && !viewModel.getModifiers().contains(Modifier.STATIC)) {
+            error(viewModel, "@ViewModelFactory classes must not be inner classes"); //NON-NLS
+            return;
+        }
+        if (!viewModel.getTypeParameters().isEmpty()) {
+            error(viewModel, "@ViewModelFactory classes must not be generic"); //NON-NLS
+            return;
+        }
+        if (!hasAccessibleNoArgConstructor(viewModel)) {
+            error(viewModel, "@ViewModelFactory classes need a non-private constructor without arguments"); //NON-NLS
+            return;
+        }
+        final DeclaredType viewModelSupertype = findSupertype(viewModel.asType(), abstractViewModel);
+        if (viewModelSupertype == null || viewModelSupertype.getTypeArguments().size() != 1) {
+            error(viewModel, "@ViewModelFactory classes must extend AbstractViewModel with a concrete view type"); //NON-NLS
+            return;
+        }
+
+        final ClassName viewModelType = ClassName.get(viewModel);
+        final ClassName factoryType = ClassName.get(viewModelType.packageName(), generatedName(viewModel, "_Factory")); //NON-NLS
+        final TypeName viewType = TypeName.get(viewModelSupertype.getTypeArguments().get(0));
+        final TypeSpec factory = TypeSpec.classBuilder(factoryType)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addOriginatingElement(viewModel)
+                .addSuperinterface(ParameterizedTypeName.get(CREATE_VIEW_MODEL_CALLBACK, viewType, viewModelType))
+                .addField(FieldSpec.builder(factoryType, "INSTANCE", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL) //NON-NLS
+                        .initializer("new $T()", factoryType) //NON-NLS
+                        .build())
+                .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build())
+                .addMethod(MethodSpec.methodBuilder("onViewModelRequested") //NON-NLS
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(viewModelType)
+                        .addStatement("return new $T()", viewModelType) //NON-NLS
+                        .build())
+                .build();
+        write(viewModel, factory);
+    }
+
+    private boolean hasAccessibleNoArgConstructor(final TypeElement type) {
+        for (final ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isViewModel(final TypeElement type, final TypeElement abstractViewModel) {
+        return mTypes.isSubtype(mTypes.erasure(type.asType()), mTypes.erasure(abstractViewModel.asType()));
+    }
+
+    /**
+     * @return the supertype of the type with the given class, with the type arguments as seen from the type
+     */
+    private DeclaredType findSupertype(final TypeMirror type, final TypeElement superclass) {
+        for (final TypeMirror supertype : mTypes.directSupertypes(type)) {
+            if (supertype.getKind() != TypeKind.DECLARED) {
+                continue;
+            }
+            if (((DeclaredType) supertype).asElement().equals(superclass)) {
+                return (DeclaredType) supertype;
+            }
+            final DeclaredType found = findSupertype(supertype, superclass);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private void write(final TypeElement viewModel, final TypeSpec type) {
+        final String packageName = mElements.getPackageOf(viewModel).getQualifiedName().toString();
+        try {
+            JavaFile.builder(packageName, type)
+                    .addFileComment(FILE_COMMENT)
+                    .build()
+                    .writeTo(mFiler);
+        } catch (IOException ex) {
+            error(viewModel, "Unable to write " + type.name + ": " + ex.getMessage()); //NON-NLS
+        }
+    }
+
+    private void error(final Element element, final String message) {
+        mMessager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * @return name of the generated class, nested class names are joined with '_'
+     */
+    private static String generatedName(final TypeElement type, final String suffix) {
+        return String.join("_", ClassName.get(type).simpleNames()) + suffix;
+    }
+
+    /**
+     * @return constant name for the field key, for example KEY_LOADED_USERS for mLoadedUsers
+     */
+    private static String keyConstantName(final String fieldName) {
+        String name = fieldName;
+        if (name.length() > 1 && name.charAt(0) == 'm' && Character.isUpperCase(name.charAt(1))) {
+            name = name.substring(1);
+        }
+        final StringBuilder constant = new StringBuilder("KEY"); //NON-NLS
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (i == 0 || (Character.isUpperCase(c) && !Character.isUpperCase(name.charAt(i - 1)))) {
+                constant.append('_');
+            }
+            constant.append(Character.toUpperCase(c));
+        }
+        return constant.toString();
+    }
+}
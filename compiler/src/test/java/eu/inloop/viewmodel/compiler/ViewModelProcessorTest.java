@@ -0,0 +1,160 @@
+package eu.inloop.viewmodel.compiler;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+public class ViewModelProcessorTest {
+
+    // minimal versions of the library and Android classes the generated code refers to
+    private static final JavaFileObject BUNDLE = JavaFileObjects.forSourceLines("android.os.Bundle",
+            "package android.os;",
+            "public final class Bundle {",
+            "    public boolean containsKey(String key) { return false; }",
+            "    public void putInt(String key, int value) {}",
+            "    public int getInt(String key) { return 0; }",
+            "    public void putByte(String key, byte value) {}",
+            "    public byte getByte(String key) { return 0; }",
+            "    public Byte getByte(String key, byte defaultValue) { return defaultValue; }",
+            "    public void putString(String key, String value) {}",
+            "    public String getString(String key) { return null; }",
+            "    public void putStringArrayList(String key, java.util.ArrayList<String> value) {}",
+            "    public java.util.ArrayList<String> getStringArrayList(String key) { return null; }",
+            "}");
+    private static final JavaFileObject I_VIEW = JavaFileObjects.forSourceLines("eu.inloop.viewmodel.IView",
+            "package eu.inloop.viewmodel;",
+            "public interface IView {}");
+    private static final JavaFileObject ABSTRACT_VIEW_MODEL = JavaFileObjects.forSourceLines("eu.inloop.viewmodel.AbstractViewModel",
+            "package eu.inloop.viewmodel;",
+            "public abstract class AbstractViewModel<T extends IView> {}");
+    private static final JavaFileObject CREATE_VIEW_MODEL_CALLBACK = JavaFileObjects.forSourceLines(
+            "eu.inloop.viewmodel.base.CreateViewModelCallback",
+            "package eu.inloop.viewmodel.base;",
+            "import eu.inloop.viewmodel.AbstractViewModel;",
+            "import eu.inloop.viewmodel.IView;",
+            "public interface CreateViewModelCallback<T extends IView, R extends AbstractViewModel<T>> {",
+            "    R onViewModelRequested();",
+            "}");
+
+    @Test
+    public void stateBindingRestoresWithoutDefaultValueGetters() {
+        final Compilation compilation = compile(JavaFileObjects.forSourceLines("test.TestViewModel",
+                "package test;",
+                "import eu.inloop.viewmodel.AbstractViewModel;",
+                "import eu.inloop.viewmodel.IView;",
+                "import eu.inloop.viewmodel.annotation.SaveState;",
+                "import java.util.List;",
+                "public class TestViewModel extends AbstractViewModel<IView> {",
+                "    @SaveState int mCount;",
+                "    @SaveState byte mFlags;",
+                "    @SaveState(\"name\") String mName;",
+                "    @SaveState List<String> mItems;",
+                "}"));
+
+        assertThat(compilation).succeededWithoutWarnings();
+        assertThat(compilation).generatedSourceFile("test.TestViewModel_StateBinding").contentsAsUtf8String()
+                .contains("private static final String KEY_COUNT = \"TestViewModel.mCount\";");
+        assertThat(compilation).generatedSourceFile("test.TestViewModel_StateBinding").contentsAsUtf8String()
+                .contains("private static final String KEY_NAME = \"name\";");
+        assertThat(compilation).generatedSourceFile("test.TestViewModel_StateBinding").contentsAsUtf8String()
+                .contains("target.mFlags = state.getByte(KEY_FLAGS);");
+        assertThat(compilation).generatedSourceFile("test.TestViewModel_StateBinding").contentsAsUtf8String()
+                .doesNotContain("state.getByte(KEY_FLAGS, ");
+        assertThat(compilation).generatedSourceFile("test.TestViewModel_StateBinding").contentsAsUtf8String()
+                .contains("new ArrayList<>(target.mItems)");
+    }
+
+    @Test
+    public void collidingKeyConstantsGetSuffix() {
+        final Compilation compilation = compile(JavaFileObjects.forSourceLines("test.TestViewModel",
+                "package test;",
+                "import eu.inloop.viewmodel.AbstractViewModel;",
+                "import eu.inloop.viewmodel.IView;",
+                "import eu.inloop.viewmodel.annotation.SaveState;",
+                "public class TestViewModel extends AbstractViewModel<IView> {",
+                "    @SaveState int mCount;",
+                "    @SaveState int count;",
+                "}"));
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).generatedSourceFile("test.TestViewModel_StateBinding").contentsAsUtf8String()
+                .contains("private static final String KEY_COUNT = \"TestViewModel.mCount\";");
+        assertThat(compilation).generatedSourceFile("test.TestViewModel_StateBinding").contentsAsUtf8String()
+                .contains("private static final String KEY_COUNT_2 = \"TestViewModel.count\";");
+    }
+
+    @Test
+    public void duplicateKeyFails() {
+        final Compilation compilation = compile(JavaFileObjects.forSourceLines("test.TestViewModel",
+                "package test;",
+                "import eu.inloop.viewmodel.AbstractViewModel;",
+                "import eu.inloop.viewmodel.IView;",
+                "import eu.inloop.viewmodel.annotation.SaveState;",
+                "public class TestViewModel extends AbstractViewModel<IView> {",
+                "    @SaveState(\"value\") int mFirst;",
+                "    @SaveState(\"value\") int mSecond;",
+                "}"));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("@SaveState key \"value\" is already used by mFirst");
+    }
+
+    @Test
+    public void privateFieldFails() {
+        final Compilation compilation = compile(JavaFileObjects.forSourceLines("test.TestViewModel",
+                "package test;",
+                "import eu.inloop.viewmodel.AbstractViewModel;",
+                "import eu.inloop.viewmodel.IView;",
+                "import eu.inloop.viewmodel.annotation.SaveState;",
+                "public class TestViewModel extends AbstractViewModel<IView> {",
+                "    @SaveState private int mCount;",
+                "}"));
+
+        assertThat(compilation).hadErrorContaining("@SaveState fields must not be private, static or final");
+    }
+
+    @Test
+    public void factoryCreatesViewModel() {
+        final Compilation compilation = compile(JavaFileObjects.forSourceLines("test.TestViewModel",
+                "package test;",
+                "import eu.inloop.viewmodel.AbstractViewModel;",
+                "import eu.inloop.viewmodel.IView;",
+                "import eu.inloop.viewmodel.annotation.ViewModelFactory;",
+                "@ViewModelFactory",
+                "public class TestViewModel extends AbstractViewModel<IView> {",
+                "}"));
+
+        assertThat(compilation).succeededWithoutWarnings();
+        assertThat(compilation).generatedSourceFile("test.TestViewModel_Factory").contentsAsUtf8String()
+                .contains("implements CreateViewModelCallback<IView, TestViewModel>");
+        assertThat(compilation).generatedSourceFile("test.TestViewModel_Factory").contentsAsUtf8String()
+                .contains("return new TestViewModel();");
+    }
+
+    @Test
+    public void factoryWithoutNoArgConstructorFails() {
+        final Compilation compilation = compile(JavaFileObjects.forSourceLines("test.TestViewModel",
+                "package test;",
+                "import eu.inloop.viewmodel.AbstractViewModel;",
+                "import eu.inloop.viewmodel.IView;",
+                "import eu.inloop.viewmodel.annotation.ViewModelFactory;",
+                "@ViewModelFactory",
+                "public class TestViewModel extends AbstractViewModel<IView> {",
+                "    public TestViewModel(int id) {}",
+                "}"));
+
+        assertThat(compilation).hadErrorContaining("@ViewModelFactory classes need a non-private constructor without arguments");
+    }
+
+    private static Compilation compile(final JavaFileObject viewModel) {
+        return javac()
+                .withProcessors(new ViewModelProcessor())
+                .compile(BUNDLE, I_VIEW, ABSTRACT_VIEW_MODEL, CREATE_VIEW_MODEL_CALLBACK, viewModel);
+    }
+}
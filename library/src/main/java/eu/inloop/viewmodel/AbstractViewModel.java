@@ -3,28 +3,85 @@ package eu.inloop.viewmodel;
 import android.app.Activity;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import androidx.annotation.AnyThread;
 import androidx.annotation.CallSuper;
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
 public abstract class AbstractViewModel<T extends IView> {
 
-    @Nullable
-    private String mUniqueIdentifier;
+    private long mUniqueIdentifier;
 
     @Nullable
     private T mView;
 
     private boolean mBindViewWasCalled;
 
-    void setUniqueIdentifier(@NonNull final String uniqueIdentifier) {
+    private volatile boolean mCreated;
+    private volatile boolean mDestroyed;
+
+    @Nullable
+    private volatile MainThreadDispatcher mMainThreadDispatcher;
+
+    // uptime of the last clearView(), used to evict the least recently bound ViewModels first
+    private long mViewClearedTime;
+    private boolean mEvicted;
+
+    // latest view command for each key, in the order they were last issued, main thread only
+    @Nullable
+    private LinkedHashMap<String, ViewCommand<T>> mViewCommands;
+    // reused by replayViewCommands(), a command may issue new commands while being replayed
+    @Nullable
+    private ArrayList<ViewCommand<T>> mReplayCommands;
+
+    @Nullable
+    private UpdateThrottler<ViewCommand<T>> mViewThrottler;
+
+    // ViewState and ListState fields, reset when the instance is recycled
+    @NonNull
+    private final ArrayList<StateHolder> mStateHolders = new ArrayList<>(0);
+    // incremented whenever the instance is reused, work of an earlier lifecycle doesn't reach the new one
+    private volatile int mGeneration;
+
+    // tasks started with executeTask() and other work cancelled after onDestroy(), guarded by itself
+    @NonNull
+    private final ArrayList<Cancellable> mTasks = new ArrayList<>(0);
+    private boolean mTasksCancelled;
+
+    void setUniqueIdentifier(final long uniqueIdentifier) {
         mUniqueIdentifier = uniqueIdentifier;
     }
 
+    long getUniqueId() {
+        return mUniqueIdentifier;
+    }
+
+    long getViewClearedTime() {
+        return mViewClearedTime;
+    }
+
+    void markEvicted() {
+        mEvicted = true;
+    }
+
+    /**
+     * @return true if this instance was destroyed by {@link ViewModelProvider#onTrimMemory(int)}. The screen
+     * gets a new instance restored from the state saved during eviction.
+     */
+    boolean isEvicted() {
+        return mEvicted;
+    }
+
     /**
      *
      * @return An app unique identifier for the current viewmodel instance (will be kept during orientation
@@ -33,7 +90,190 @@ public abstract class AbstractViewModel<T extends IView> {
     @SuppressWarnings("unused")
     @Nullable
     public String getUniqueIdentifier() {
-        return mUniqueIdentifier;
+        return mUniqueIdentifier == 0 ? null : Long.toString(mUniqueIdentifier);
+    }
+
+    /**
+     * Calls {@link #onCreate(Bundle, Bundle)} unless it was already called for this instance.
+     *
+     * @return true if {@link #onCreate(Bundle, Bundle)} was called
+     */
+    synchronized boolean performCreate(@Nullable final Bundle arguments, @Nullable final Bundle savedInstanceState) {
+        if (mCreated) {
+            return false;
+        }
+        onCreate(arguments, savedInstanceState);
+        mCreated = true;
+        return true;
+    }
+
+    boolean isDestroyed() {
+        return mDestroyed;
+    }
+
+    void setMainThreadDispatcher(@NonNull final MainThreadDispatcher mainThreadDispatcher) {
+        mMainThreadDispatcher = mainThreadDispatcher;
+    }
+
+    /**
+     * Clears everything tied to the lifecycle of a destroyed instance before it is put into the recycle pool.
+     */
+    @MainThread
+    void clearForRecycling() {
+        final MainThreadDispatcher mainThreadDispatcher = mMainThreadDispatcher;
+        (mainThreadDispatcher != null ? mainThreadDispatcher : MainThreadDispatcher.getDefault()).cancel(this);
+        if (mViewThrottler != null) {
+            mViewThrottler.cancelAll();
+            mViewThrottler = null;
+        }
+        if (mViewCommands != null) {
+            mViewCommands.clear();
+        }
+        mView = null;
+        mBindViewWasCalled = false;
+        mViewClearedTime = 0;
+        mEvicted = false;
+        mUniqueIdentifier = 0;
+        for (int i = 0; i < mStateHolders.size(); i++) {
+            mStateHolders.get(i).reset();
+        }
+    }
+
+    /**
+     * Makes a recycled instance go through the lifecycle again, as if it was new.
+     */
+    synchronized void reuse() {
+        synchronized (mTasks) {
+            mTasks.clear();
+            mTasksCancelled = false;
+        }
+        mGeneration++;
+        mCreated = false;
+        mDestroyed = false;
+        for (int i = 0; i < mStateHolders.size(); i++) {
+            mStateHolders.get(i).onReuse();
+        }
+    }
+
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    void registerStateHolder(@NonNull final StateHolder stateHolder) {
+        mStateHolders.add(stateHolder);
+    }
+
+    /**
+     * Runs the action on the main thread together with the other updates pending for the next display frame.
+     * Actions are run in the order they were posted, and dropped once this ViewModel is destroyed.
+     * Use it to hand results of background work over to the main thread, where {@link #getView()} may be called.
+     */
+    @AnyThread
+    protected final void runOnMainThread(@NonNull final Runnable action) {
+        runOnMainThread(action, mGeneration);
+    }
+
+    /**
+     * @param generation {@link #getGeneration()} when the work was started, the action is dropped once the
+     *                   instance was reused since
+     * @return false if the action was dropped because the instance was destroyed or reused
+     */
+    @AnyThread
+    boolean runOnMainThread(@NonNull final Runnable action, final int generation) {
+        final MainThreadDispatcher mainThreadDispatcher = mMainThreadDispatcher;
+        return (mainThreadDispatcher != null ? mainThreadDispatcher : MainThreadDispatcher.getDefault()).post(this, generation, action);
+    }
+
+    /**
+     * Calls {@link #onDestroy()} unless it was already called for this instance.
+     */
+    synchronized void performDestroy() {
+        if (mDestroyed) {
+            return;
+        }
+        mDestroyed = true;
+        onDestroy();
+        cancelTasks();
+        // the screen of an evicted instance still references it until it gets the new one
+        if (!mEvicted) {
+            watchForLeak();
+        }
+    }
+
+    void watchForLeak() {
+        final ViewModelLeakWatcher leakWatcher = ViewModelHelper.getLeakWatcher();
+        if (leakWatcher != null) {
+            leakWatcher.watch(this);
+        }
+    }
+
+    /**
+     * Runs the task on the shared background pool with {@link ViewModelTask#PRIORITY_DEFAULT}.
+     * The task is cancelled automatically after {@link #onDestroy()}.
+     *
+     * @return the task
+     */
+    @NonNull
+    protected final <P, R> ViewModelTask<P, R> executeTask(@NonNull final ViewModelTask<P, R> task) {
+        return executeTask(task, ViewModelTask.PRIORITY_DEFAULT);
+    }
+
+    /**
+     * Runs the task on the shared background pool. Queued tasks with a higher priority start first.
+     * The task is cancelled automatically after {@link #onDestroy()}.
+     *
+     * @param priority for example {@link ViewModelTask#PRIORITY_HIGH}
+     * @return the task
+     */
+    @NonNull
+    protected final <P, R> ViewModelTask<P, R> executeTask(@NonNull final ViewModelTask<P, R> task, final int priority) {
+        if (!addTask(task)) {
+            task.cancel();
+            return task;
+        }
+        task.start(this, priority);
+        return task;
+    }
+
+    /**
+     * Registers work to be cancelled after {@link #onDestroy()}.
+     *
+     * @return false if this ViewModel was already destroyed, the work is not registered
+     */
+    boolean addTask(@NonNull final Cancellable task) {
+        synchronized (mTasks) {
+            if (mTasksCancelled) {
+                return false;
+            }
+            mTasks.add(task);
+            return true;
+        }
+    }
+
+    void onTaskFinished(@NonNull final Cancellable task) {
+        synchronized (mTasks) {
+            mTasks.remove(task);
+        }
+    }
+
+    private void cancelTasks() {
+        final Cancellable[] tasks;
+        synchronized (mTasks) {
+            mTasksCancelled = true;
+            tasks = mTasks.toArray(new Cancellable[mTasks.size()]);
+            mTasks.clear();
+        }
+        // outside of the lock, cancelling may call back into onTaskFinished()
+        for (final Cancellable task : tasks) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * @return true once {@link #onCreate(Bundle, Bundle)} has returned for this instance.
+     */
+    public boolean isCreated() {
+        return mCreated;
     }
 
     /**
@@ -60,14 +300,139 @@ public abstract class AbstractViewModel<T extends IView> {
         mView = view;
     }
 
+    /**
+     * The view may only be accessed on the main thread, see {@link #runOnMainThread(Runnable)} and
+     * {@link #runOnView(String, ViewCommand)}.
+     */
+    @MainThread
     @Nullable
     public T getView() {
         return mView;
     }
 
+    /**
+     * Runs the command on the view now if one is bound, and records it as the latest command for the key.
+     * Commands with the same key replace each other, so use one key per piece of UI (for example "progress"
+     * for both showLoading() and hideProgress()).
+     * <p>
+     * A view bound later (after a rotation or when coming back from the back stack) starts blank, so the latest
+     * command of each key is replayed to it in the order they were issued, right after {@link #onBindView(IView)}.
+     * Updates issued while no view is bound are therefore not lost, and rebinding only replays the net state
+     * instead of every intermediate call.
+     * <p>
+     * Called off the main thread, the command is handed over with {@link #runOnMainThread(Runnable)}.
+     * For state that is updated from several threads, see {@link ViewState}.
+     *
+     * @param key     identifies the kind of update
+     * @param command the view call
+     */
+    @AnyThread
+    protected final void runOnView(@NonNull final String key, @NonNull final ViewCommand<T> command) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    runOnView(key, command);
+                }
+            });
+            return;
+        }
+        if (mViewThrottler != null) {
+            // supersedes a throttled command for the same key that is still waiting for its frame
+            mViewThrottler.cancel(key);
+        }
+        recordViewCommand(key, command);
+    }
+
+    private void recordViewCommand(@NonNull final String key, @NonNull final ViewCommand<T> command) {
+        if (mViewCommands == null) {
+            mViewCommands = new LinkedHashMap<>();
+        }
+        // re-insert so the replay order follows the latest calls
+        mViewCommands.remove(key);
+        mViewCommands.put(key, command);
+        if (mView != null) {
+            command.execute(mView);
+        }
+    }
+
+    /**
+     * Like {@link #runOnView(String, ViewCommand)}, but conflates the commands so at most one per key is run
+     * per display frame, the latest one. Use it for high-frequency updates such as download progress, where
+     * running every update would cause a layout pass each time.
+     *
+     * @param key     identifies the kind of update
+     * @param command the view call
+     */
+    @MainThread
+    protected final void runOnViewThrottled(@NonNull final String key, @NonNull final ViewCommand<T> command) {
+        if (mViewThrottler == null) {
+            mViewThrottler = new UpdateThrottler<>(getFrameScheduler(), new UpdateThrottler.Sink<ViewCommand<T>>() {
+                @Override
+                public void onUpdate(@NonNull String key, @NonNull ViewCommand<T> command) {
+                    if (!mDestroyed) {
+                        recordViewCommand(key, command);
+                    }
+                }
+            });
+        }
+        mViewThrottler.post(key, command);
+    }
+
+    /**
+     * @return frame source for {@link #runOnViewThrottled(String, ViewCommand)}, override in tests to return a
+     * {@link ManualFrameScheduler}
+     */
+    @NonNull
+    protected FrameScheduler getFrameScheduler() {
+        return ChoreographerFrameScheduler.getInstance();
+    }
+
+    /**
+     * Forgets the recorded command for the key, it won't be replayed to views bound later.
+     */
+    @MainThread
+    protected final void clearViewCommand(@NonNull final String key) {
+        if (mViewThrottler != null) {
+            mViewThrottler.cancel(key);
+        }
+        if (mViewCommands != null) {
+            mViewCommands.remove(key);
+        }
+    }
+
+    void replayViewCommands() {
+        final T view = mView;
+        if (view == null || mViewCommands == null || mViewCommands.isEmpty()) {
+            return;
+        }
+        if (mReplayCommands == null) {
+            mReplayCommands = new ArrayList<>(mViewCommands.size());
+        }
+        mReplayCommands.addAll(mViewCommands.values());
+        try {
+            for (int i = 0; i < mReplayCommands.size(); i++) {
+                mReplayCommands.get(i).execute(view);
+            }
+        } finally {
+            mReplayCommands.clear();
+        }
+    }
+
     @CallSuper
     public void clearView() {
         mView = null;
+        mViewClearedTime = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Override to report the approximate amount of memory retained by this ViewModel (loaded data, caches).
+     * {@link ViewModelProvider#onTrimMemory(int)} uses it to decide how many ViewModels without a view to evict.
+     *
+     * @return estimated size in bytes, 0 if unknown
+     */
+    public long getEstimatedMemorySize() {
+        return 0;
     }
 
     @SuppressWarnings({"EmptyMethod", "UnusedParameters"})
@@ -0,0 +1,9 @@
+package eu.inloop.viewmodel;
+
+/**
+ * Work owned by a ViewModel that is cancelled after its {@link AbstractViewModel#onDestroy()}.
+ */
+interface Cancellable {
+
+    void cancel();
+}
@@ -0,0 +1,183 @@
+package eu.inloop.viewmodel;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+/**
+ * {@link FrameScheduler} backed by {@link Choreographer}, so callbacks run together with the next frame's
+ * input, animation and layout pass. Falls back to a main thread Handler with a 16ms period before API 16.
+ * <p>
+ * Posted callbacks are queued and drained by a single frame callback registered for the earliest due one,
+ * so posting doesn't allocate.
+ */
+public class ChoreographerFrameScheduler implements FrameScheduler {
+
+    private static final long FALLBACK_FRAME_MILLIS = 16;
+    private static final long NOT_SCHEDULED = Long.MAX_VALUE;
+
+    @NonNull
+    private static final ChoreographerFrameScheduler sInstance = new ChoreographerFrameScheduler();
+
+    @NonNull
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    @NonNull
+    private final Object mLock = new Object();
+    // queued callbacks and the uptime they are due at, guarded by mLock
+    @NonNull
+    private Runnable[] mCallbacks = new Runnable[8];
+    @NonNull
+    private long[] mDueTimes = new long[8];
+    private int mCount;
+    // due time the frame callback is registered for, guarded by mLock
+    private long mScheduledTime = NOT_SCHEDULED;
+
+    // main thread only, reused by every drain
+    @NonNull
+    private Runnable[] mDueCallbacks = new Runnable[8];
+
+    @NonNull
+    private final Runnable mDrainCallback = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    @NonNull
+    private final Runnable mScheduleCallback = new Runnable() {
+        @Override
+        public void run() {
+            schedule();
+        }
+    };
+
+    // created on first use, Choreographer is not available before API 16
+    private Choreographer.FrameCallback mFrameCallback;
+
+    @NonNull
+    public static ChoreographerFrameScheduler getInstance() {
+        return sInstance;
+    }
+
+    private ChoreographerFrameScheduler() {
+    }
+
+    /**
+     * Can be called from any thread, off the main thread the frame callback is registered with a Handler message first.
+     */
+    @Override
+    public void postFrameCallback(@NonNull final Runnable callback, final long delayMillis) {
+        final long dueTime = SystemClock.uptimeMillis() + Math.max(delayMillis, 0);
+        final boolean reschedule;
+        synchronized (mLock) {
+            if (mCount == mCallbacks.length) {
+                final Runnable[] callbacks = new Runnable[mCount * 2];
+                final long[] dueTimes = new long[mCount * 2];
+                System.arraycopy(mCallbacks, 0, callbacks, 0, mCount);
+                System.arraycopy(mDueTimes, 0, dueTimes, 0, mCount);
+                mCallbacks = callbacks;
+                mDueTimes = dueTimes;
+            }
+            mCallbacks[mCount] = callback;
+            mDueTimes[mCount] = dueTime;
+            mCount++;
+            reschedule = dueTime < mScheduledTime;
+            if (reschedule) {
+                mScheduledTime = dueTime;
+            }
+        }
+        if (!reschedule) {
+            return;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            schedule();
+        } else {
+            mMainHandler.post(mScheduleCallback);
+        }
+    }
+
+    @Override
+    public long uptimeMillis() {
+        return SystemClock.uptimeMillis();
+    }
+
+    /**
+     * (Re-)registers the frame callback for the earliest due callback.
+     */
+    @MainThread
+    private void schedule() {
+        final long scheduledTime;
+        synchronized (mLock) {
+            scheduledTime = mScheduledTime;
+        }
+        if (scheduledTime == NOT_SCHEDULED) {
+            return;
+        }
+        final long delayMillis = Math.max(scheduledTime - SystemClock.uptimeMillis(), 0);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (mFrameCallback == null) {
+                mFrameCallback = new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(final long frameTimeNanos) {
+                        drain();
+                    }
+                };
+            }
+            final Choreographer choreographer = Choreographer.getInstance();
+            choreographer.removeFrameCallback(mFrameCallback);
+            choreographer.postFrameCallbackDelayed(mFrameCallback, delayMillis);
+        } else {
+            mMainHandler.removeCallbacks(mDrainCallback);
+            mMainHandler.postDelayed(mDrainCallback, delayMillis + FALLBACK_FRAME_MILLIS);
+        }
+    }
+
+    /**
+     * Runs the due callbacks in the order they were posted and registers the frame callback for the rest.
+     */
+    @MainThread
+    private void drain() {
+        final long now = SystemClock.uptimeMillis();
+        int dueCount = 0;
+        synchronized (mLock) {
+            if (mDueCallbacks.length < mCount) {
+                mDueCallbacks = new Runnable[mCallbacks.length];
+            }
+            long nextDueTime = NOT_SCHEDULED;
+            int remaining = 0;
+            for (int i = 0; i < mCount; i++) {
+                if (mDueTimes[i] <= now) {
+                    mDueCallbacks[dueCount++] = mCallbacks[i];
+                } else {
+                    mCallbacks[remaining] = mCallbacks[i];
+                    mDueTimes[remaining] = mDueTimes[i];
+                    nextDueTime = Math.min(nextDueTime, mDueTimes[i]);
+                    remaining++;
+                }
+            }
+            for (int i = remaining; i < mCount; i++) {
+                mCallbacks[i] = null;
+            }
+            mCount = remaining;
+            mScheduledTime = nextDueTime;
+        }
+        // callbacks posted while running are queued for a later frame
+        try {
+            for (int i = 0; i < dueCount; i++) {
+                mDueCallbacks[i].run();
+            }
+        } finally {
+            for (int i = 0; i < dueCount; i++) {
+                mDueCallbacks[i] = null;
+            }
+            schedule();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package eu.inloop.viewmodel;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Keeps the saved state of ViewModels in app-private files instead of the instance state Bundle, which
+ * travels through Binder and is limited to about 1MB per transaction. Only a marker is put into the Bundle.
+ * <p>
+ * The state is marshalled on the calling thread and written to disk on a background thread. Reads of a state that
+ * wasn't written yet are served from memory. A state still waiting to be written when the process is killed is lost,
+ * its screen is then restored without state as if it had never saved one.
+ * <p>
+ * Snapshots are kept per task, a task that is still in the recent tasks may be restored and needs them. Those of other
+ * tasks are deleted in the background when the store is created and then at most once per
+ * {@link #CLEANUP_INTERVAL_MILLIS} while writing. Before Lollipop the tasks of the app can't be listed, snapshots
+ * not written for longer than the configured age are deleted instead.
+ * <p>
+ * Install with {@link ViewModelHelper#setSavedStateStore(FileSavedStateStore)} in {@link android.app.Application#onCreate()},
+ * before the first screen is created.
+ */
+public class FileSavedStateStore {
+
+    private static final String TAG = "FileSavedStateStore"; //NON-NLS
+    private static final String DIRECTORY_NAME = "viewmodel_state"; //NON-NLS
+    private static final String FILE_SUFFIX = ".state"; //NON-NLS
+    private static final String TEMP_FILE_SUFFIX = ".tmp"; //NON-NLS
+
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(3);
+    public static final long CLEANUP_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final long NEVER = Long.MIN_VALUE;
+
+    @NonNull
+    private final File mDirectory;
+    @NonNull
+    private final ClassLoader mClassLoader;
+    @Nullable
+    private final ActivityManager mActivityManager;
+    private final long mMaxAgeMillis;
+    // writes, deletes and cleanups run one after another, so they never see a file being written
+    @NonNull
+    private final Executor mFileExecutor;
+    @NonNull
+    private final Runnable mCleanup = new Runnable() {
+        @Override
+        public void run() {
+            deleteStale();
+        }
+    };
+
+    // marshalled states not written to disk yet, by screen identifier
+    @NonNull
+    private final ConcurrentHashMap<Long, byte[]> mPendingWrites = new ConcurrentHashMap<>();
+
+    // uptime of the last cleanup, guarded by this
+    private long mLastCleanupTime = NEVER;
+
+    public FileSavedStateStore(@NonNull final Context context) {
+        this(context, DEFAULT_MAX_AGE_MILLIS);
+    }
+
+    /**
+     * @param context      context used to locate the app-private files directory
+     * @param maxAgeMillis before Lollipop, snapshots not written for longer than this are deleted
+     */
+    public FileSavedStateStore(@NonNull final Context context, final long maxAgeMillis) {
+        mDirectory = new File(context.getFilesDir(), DIRECTORY_NAME);
+        mClassLoader = context.getClassLoader();
+        mActivityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        mMaxAgeMillis = maxAgeMillis;
+        mFileExecutor = newFileExecutor();
+        scheduleCleanup();
+    }
+
+    /**
+     * Marshals the state on the calling thread and writes it to disk in the background.
+     *
+     * @param taskId task of the screen, see {@link android.app.Activity#getTaskId()}
+     * @return size of the marshalled state in bytes, or -1 if it can't be marshalled and has to be kept
+     * in the instance state Bundle instead
+     */
+    int write(final int taskId, final long screenId, @NonNull final Bundle state) {
+        final Parcel parcel = Parcel.obtain();
+        final byte[] data;
+        try {
+            parcel.writeBundle(state);
+            data = parcel.marshall();
+        } catch (RuntimeException ex) {
+            // Binders and file descriptors can only travel in the Bundle
+            Log.w(TAG, "Unable to marshall saved state", ex); //NON-NLS
+            return -1;
+        } finally {
+            parcel.recycle();
+        }
+        mPendingWrites.put(screenId, data);
+        mFileExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                flush(taskId, screenId);
+            }
+        });
+        scheduleCleanup();
+        return data.length;
+    }
+
+    /**
+     * @return state written by {@link #write(int, long, Bundle)}, or null if there is none
+     */
+    @Nullable
+    Bundle read(final int taskId, final long screenId) {
+        byte[] data = mPendingWrites.get(screenId);
+        if (data == null) {
+            data = readFile(getFile(taskId, screenId));
+        }
+        if (data == null) {
+            return null;
+        }
+        final Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(data, 0, data.length);
+            parcel.setDataPosition(0);
+            return parcel.readBundle(mClassLoader);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    void delete(final int taskId, final long screenId) {
+        mPendingWrites.remove(screenId);
+        mFileExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                //noinspection ResultOfMethodCallIgnored
+                getFile(taskId, screenId).delete();
+            }
+        });
+    }
+
+    private void flush(final int taskId, final long screenId) {
+        final byte[] data = mPendingWrites.get(screenId);
+        if (data == null) {
+            // deleted, or written together with an earlier write of the screen
+            return;
+        }
+        writeFile(getFile(taskId, screenId), data);
+        mPendingWrites.remove(screenId, data);
+    }
+
+    private void writeFile(@NonNull final File file, @NonNull final byte[] data) {
+        final File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Unable to create " + directory); //NON-NLS
+            return;
+        }
+        // write to a temporary file first so a crash never leaves a truncated snapshot behind
+        final File tempFile = new File(directory, file.getName() + TEMP_FILE_SUFFIX);
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(tempFile);
+            outputStream.write(data);
+            outputStream.close();
+            outputStream = null;
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Unable to rename " + tempFile + " to " + file); //NON-NLS
+            }
+        } catch (IOException ex) {
+            Log.e(TAG, "Unable to write saved state", ex); //NON-NLS
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+        } finally {
+            closeQuietly(outputStream);
+        }
+    }
+
+    @Nullable
+    private static byte[] readFile(@NonNull final File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r"); //NON-NLS
+            final FileChannel channel = randomAccessFile.getChannel();
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            return data;
+        } catch (IOException ex) {
+            Log.e(TAG, "Unable to read saved state", ex); //NON-NLS
+            return null;
+        } finally {
+            closeQuietly(randomAccessFile);
+        }
+    }
+
+    private void scheduleCleanup() {
+        final long now = SystemClock.uptimeMillis();
+        synchronized (this) {
+            if (mLastCleanupTime != NEVER && now - mLastCleanupTime < CLEANUP_INTERVAL_MILLIS) {
+                return;
+            }
+            mLastCleanupTime = now;
+        }
+        mFileExecutor.execute(mCleanup);
+    }
+
+    private void deleteStale() {
+        final File[] taskDirectories = mDirectory.listFiles();
+        if (taskDirectories == null) {
+            return;
+        }
+        final HashSet<String> restorableTasks = getRestorableTaskDirectoryNames();
+        final long oldestAllowed = System.currentTimeMillis() - mMaxAgeMillis;
+        for (final File taskDirectory : taskDirectories) {
+            if (taskDirectory.isFile()) {
+                // written before snapshots were kept per task, no screen can find it anymore
+                //noinspection ResultOfMethodCallIgnored
+                taskDirectory.delete();
+                continue;
+            }
+            final File[] files = taskDirectory.listFiles();
+            if (files == null) {
+                continue;
+            }
+            final boolean restorable = restorableTasks == null || restorableTasks.contains(taskDirectory.getName());
+            for (final File file : files) {
+                // nothing is being written while this runs, a temporary file is left over from a crash
+                final boolean stale = !restorable || file.getName().endsWith(TEMP_FILE_SUFFIX)
+                        || restorableTasks == null && file.lastModified() < oldestAllowed;
+                if (stale) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+            if (!restorable) {
+                //noinspection ResultOfMethodCallIgnored
+                taskDirectory.delete();
+            }
+        }
+    }
+
+    /**
+     * @return names of the directories of the tasks the system may still restore, or null if they can't be listed
+     */
+    // RecentTaskInfo#persistentId is deprecated in favour of taskId, which was only added in Q
+    @SuppressWarnings("deprecation")
+    @Nullable
+    private HashSet<String> getRestorableTaskDirectoryNames() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP || mActivityManager == null) {
+            return null;
+        }
+        final List<ActivityManager.AppTask> appTasks = mActivityManager.getAppTasks();
+        final HashSet<String> names = new HashSet<>(appTasks.size());
+        for (final ActivityManager.AppTask appTask : appTasks) {
+            try {
+                names.add(Integer.toString(appTask.getTaskInfo().persistentId));
+            } catch (IllegalArgumentException ex) {
+                // the task was removed meanwhile
+            }
+        }
+        return names;
+    }
+
+    @NonNull
+    private File getFile(final int taskId, final long screenId) {
+        return new File(new File(mDirectory, Integer.toString(taskId)), Long.toString(screenId) + FILE_SUFFIX);
+    }
+
+    private static void closeQuietly(@Nullable final Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            //
+        }
+    }
+
+    @NonNull
+    private static ExecutorService newFileExecutor() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                final Thread thread = new Thread(runnable, TAG);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+}
@@ -0,0 +1,20 @@
+package eu.inloop.viewmodel;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Source of display frames and time for {@link UpdateThrottler}. {@link ChoreographerFrameScheduler} is the
+ * real implementation, {@link ManualFrameScheduler} lets tests drive frames and time by hand.
+ */
+public interface FrameScheduler {
+
+    /**
+     * Runs the callback once on the main thread, at the first display frame after the delay.
+     */
+    void postFrameCallback(@NonNull Runnable callback, long delayMillis);
+
+    /**
+     * @return current time in milliseconds, on the same time base as the frames
+     */
+    long uptimeMillis();
+}
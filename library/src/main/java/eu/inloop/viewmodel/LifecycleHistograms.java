@@ -0,0 +1,108 @@
+package eu.inloop.viewmodel;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import androidx.annotation.NonNull;
+
+/**
+ * {@link LifecycleTracer.MetricsSink} that keeps a latency histogram for every ViewModel class and lifecycle
+ * event. Buckets grow exponentially with four sub-buckets per power of two, so a percentile is reported with
+ * a precision of about 25% in constant memory.
+ */
+public class LifecycleHistograms implements LifecycleTracer.MetricsSink {
+
+    // 4 exact buckets for 0-3ns, then 4 sub-buckets for each power of two up to 2^62
+    private static final int BUCKET_COUNT = 4 + 61 * 4;
+
+    @NonNull
+    private final ConcurrentHashMap<Class<?>, long[][]> mHistograms = new ConcurrentHashMap<>();
+
+    @Override
+    public void onLifecycleEvent(@NonNull final Class<?> viewModelClass, final int event, final long durationNanos) {
+        long[][] histograms = mHistograms.get(viewModelClass);
+        if (histograms == null) {
+            histograms = new long[LifecycleTracer.EVENT_COUNT][BUCKET_COUNT];
+            final long[][] existing = mHistograms.putIfAbsent(viewModelClass, histograms);
+            if (existing != null) {
+                histograms = existing;
+            }
+        }
+        final long[] histogram = histograms[event];
+        synchronized (histogram) {
+            histogram[bucketIndex(durationNanos)]++;
+        }
+    }
+
+    /**
+     * @param viewModelClass class of the ViewModel
+     * @param event          one of the {@link LifecycleTracer} EVENT_ constants
+     * @param percentile     percentile between 0 and 1, for example 0.5 for p50 or 0.99 for p99
+     * @return upper bound of the latency in nanoseconds, or -1 if nothing was recorded
+     */
+    public long getPercentileNanos(@NonNull final Class<?> viewModelClass, final int event, final double percentile) {
+        final long[][] histograms = mHistograms.get(viewModelClass);
+        if (histograms == null) {
+            return -1;
+        }
+        final long[] histogram = histograms[event];
+        synchronized (histogram) {
+            long count = 0;
+            for (final long bucket : histogram) {
+                count += bucket;
+            }
+            if (count == 0) {
+                return -1;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += histogram[i];
+                if (seen >= rank) {
+                    return bucketUpperBound(i);
+                }
+            }
+            return bucketUpperBound(BUCKET_COUNT - 1);
+        }
+    }
+
+    /**
+     * @return number of recorded events
+     */
+    public long getCount(@NonNull final Class<?> viewModelClass, final int event) {
+        final long[][] histograms = mHistograms.get(viewModelClass);
+        if (histograms == null) {
+            return 0;
+        }
+        final long[] histogram = histograms[event];
+        synchronized (histogram) {
+            long count = 0;
+            for (final long bucket : histogram) {
+                count += bucket;
+            }
+            return count;
+        }
+    }
+
+    public void reset() {
+        mHistograms.clear();
+    }
+
+    static int bucketIndex(final long nanos) {
+        if (nanos < 4) {
+            return (int) Math.max(nanos, 0);
+        }
+        final int log2 = 63 - Long.numberOfLeadingZeros(nanos);
+        final int subBucket = (int) ((nanos >>> (log2 - 2)) & 3);
+        return (log2 - 1) * 4 + subBucket;
+    }
+
+    static long bucketUpperBound(final int index) {
+        if (index < 4) {
+            return index;
+        }
+        final int log2 = index / 4 + 1;
+        final int subBucket = index % 4;
+        final long lowerBound = (4L + subBucket) << (log2 - 2);
+        return lowerBound + (1L << (log2 - 2)) - 1;
+    }
+}
@@ -0,0 +1,99 @@
+package eu.inloop.viewmodel;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.os.TraceCompat;
+
+/**
+ * Times the ViewModel lifecycle callbacks dispatched by {@link ViewModelHelper}, per ViewModel class.
+ * Each callback is wrapped in a system trace section named {@code <ViewModel class>.<callback>}, so it shows up
+ * in systrace / Perfetto, and its duration is reported to an optional {@link MetricsSink}, for example
+ * {@link LifecycleHistograms}.
+ * <p>
+ * Install with {@link ViewModelHelper#setLifecycleTracer(LifecycleTracer)}.
+ */
+public class LifecycleTracer {
+
+    public static final int EVENT_ON_CREATE = 0;
+    public static final int EVENT_ON_BIND_VIEW = 1;
+    public static final int EVENT_ON_START = 2;
+    public static final int EVENT_ON_STOP = 3;
+    public static final int EVENT_ON_SAVE_INSTANCE_STATE = 4;
+    public static final int EVENT_ON_DESTROY = 5;
+
+    static final int EVENT_COUNT = 6;
+
+    @NonNull
+    private static final String[] EVENT_NAMES = {
+            "onCreate", "onBindView", "onStart", "onStop", "onSaveInstanceState", "onDestroy" //NON-NLS
+    };
+
+    // the system limits section names to 127 characters
+    private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+    public interface MetricsSink {
+
+        /**
+         * Called on the thread that ran the lifecycle callback.
+         *
+         * @param viewModelClass class of the ViewModel
+         * @param event          one of the EVENT_ constants
+         * @param durationNanos  time spent in the callback
+         */
+        void onLifecycleEvent(@NonNull Class<?> viewModelClass, int event, long durationNanos);
+    }
+
+    @Nullable
+    private final MetricsSink mMetricsSink;
+    private final boolean mSystemTrace;
+
+    @NonNull
+    private final ConcurrentHashMap<Class<?>, String[]> mSectionNames = new ConcurrentHashMap<>();
+
+    /**
+     * @param metricsSink receives the duration of every callback, may be null
+     * @param systemTrace true to emit system trace sections
+     */
+    public LifecycleTracer(@Nullable final MetricsSink metricsSink, final boolean systemTrace) {
+        mMetricsSink = metricsSink;
+        mSystemTrace = systemTrace;
+    }
+
+    @NonNull
+    public static String getEventName(final int event) {
+        return EVENT_NAMES[event];
+    }
+
+    long begin(@NonNull final Object viewModel, final int event) {
+        if (mSystemTrace) {
+            TraceCompat.beginSection(getSectionName(viewModel.getClass(), event));
+        }
+        return System.nanoTime();
+    }
+
+    void end(@NonNull final Object viewModel, final int event, final long startTime) {
+        final long duration = System.nanoTime() - startTime;
+        if (mSystemTrace) {
+            TraceCompat.endSection();
+        }
+        if (mMetricsSink != null) {
+            mMetricsSink.onLifecycleEvent(viewModel.getClass(), event, duration);
+        }
+    }
+
+    @NonNull
+    private String getSectionName(@NonNull final Class<?> viewModelClass, final int event) {
+        String[] names = mSectionNames.get(viewModelClass);
+        if (names == null) {
+            names = new String[EVENT_COUNT];
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                final String name = viewModelClass.getSimpleName() + "." + EVENT_NAMES[i];
+                names[i] = name.length() > MAX_SECTION_NAME_LENGTH ? name.substring(0, MAX_SECTION_NAME_LENGTH) : name;
+            }
+            mSectionNames.put(viewModelClass, names);
+        }
+        return names[event];
+    }
+}
@@ -0,0 +1,191 @@
+package eu.inloop.viewmodel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+
+/**
+ * List owned by a ViewModel that publishes changes instead of whole lists. Each {@link #submitList(List)}
+ * is diffed against the previously published version on the ViewModel's background pool (see
+ * {@link AbstractViewModel#executeTask(ViewModelTask)}), the resulting {@link ListUpdate} is delivered to the
+ * listener on the main thread. Lists submitted while a diff is running are conflated, only the latest one is
+ * diffed next.
+ * <p>
+ * Forward the updates to the view with {@link AbstractViewModel#runOnView(String, ViewCommand)} and apply them
+ * to the adapter with a {@link ListUpdateApplier}. The list is emptied when a {@link RecyclableViewModel} owning it
+ * is recycled.
+ *
+ * <p>
+ * Requires {@code androidx.recyclerview:recyclerview}, which the library only compiles against.
+ *
+ * @param <E> type of the list items
+ */
+public class ListState<E> implements StateHolder {
+
+    public interface Listener<E> {
+
+        @MainThread
+        void onListUpdated(@NonNull ListUpdate<E> update);
+    }
+
+    /**
+     * Versions are unique across all lists of the process, so an applier that outlives its ViewModel (for example
+     * one kept by a Fragment across a reuse or a new ViewModel instance) never takes a version of another list for
+     * the one it shows. Version 0 is the empty list every ListState starts with.
+     */
+    @NonNull
+    private static final AtomicInteger sNextVersion = new AtomicInteger();
+
+    @NonNull
+    private final AbstractViewModel<?> mOwner;
+    @NonNull
+    private final DiffUtil.ItemCallback<E> mItemCallback;
+    @NonNull
+    private final Listener<E> mListener;
+
+    @NonNull
+    private List<E> mPublishedList = Collections.emptyList();
+    private int mPublishedVersion;
+    @NonNull
+    private List<E> mSubmittedList = Collections.emptyList();
+    private int mSubmittedVersion;
+    private boolean mDiffRunning;
+
+    /**
+     * Compares items with {@link Object#equals(Object)}.
+     */
+    public ListState(@NonNull final AbstractViewModel<?> owner, @NonNull final Listener<E> listener) {
+        this(owner, new DiffUtil.ItemCallback<E>() {
+            @Override
+            public boolean areItemsTheSame(@NonNull E oldItem, @NonNull E newItem) {
+                return oldItem.equals(newItem);
+            }
+
+            @Override
+            public boolean areContentsTheSame(@NonNull E oldItem, @NonNull E newItem) {
+                return oldItem.equals(newItem);
+            }
+        }, listener);
+    }
+
+    public ListState(@NonNull final AbstractViewModel<?> owner,
+                     @NonNull final DiffUtil.ItemCallback<E> itemCallback,
+                     @NonNull final Listener<E> listener) {
+        mOwner = owner;
+        mItemCallback = itemCallback;
+        mListener = listener;
+        owner.registerStateHolder(this);
+    }
+
+    /**
+     * @return the latest submitted list, unmodifiable
+     */
+    @NonNull
+    public List<E> getList() {
+        return mSubmittedList;
+    }
+
+    /**
+     * Publishes a new version of the list. The list is copied, later changes to it are not picked up.
+     */
+    @MainThread
+    public void submitList(@NonNull final List<E> list) {
+        mSubmittedList = Collections.unmodifiableList(new ArrayList<>(list));
+        mSubmittedVersion = nextVersion();
+        if (!mDiffRunning) {
+            diffSubmittedList();
+        }
+    }
+
+    @Override
+    @MainThread
+    public void reset() {
+        // diffs still running are dropped together with the other tasks of the previous lifecycle
+        mPublishedList = Collections.emptyList();
+        mPublishedVersion = 0;
+        mSubmittedList = Collections.emptyList();
+        mSubmittedVersion = 0;
+        mDiffRunning = false;
+    }
+
+    @Override
+    public void onReuse() {
+    }
+
+    private static int nextVersion() {
+        int version;
+        do {
+            version = sNextVersion.incrementAndGet();
+        } while (version == 0);
+        return version;
+    }
+
+    private void diffSubmittedList() {
+        final List<E> oldList = mPublishedList;
+        final int oldVersion = mPublishedVersion;
+        final List<E> newList = mSubmittedList;
+        final int newVersion = mSubmittedVersion;
+        mDiffRunning = true;
+        mOwner.executeTask(new ViewModelTask<Void, DiffUtil.DiffResult>() {
+            @Override
+            protected DiffUtil.DiffResult doInBackground() {
+                return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                    @Override
+                    public int getOldListSize() {
+                        return oldList.size();
+                    }
+
+                    @Override
+                    public int getNewListSize() {
+                        return newList.size();
+                    }
+
+                    @Override
+                    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                        return mItemCallback.areItemsTheSame(oldList.get(oldItemPosition), newList.get(newItemPosition));
+                    }
+
+                    @Override
+                    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                        return mItemCallback.areContentsTheSame(oldList.get(oldItemPosition), newList.get(newItemPosition));
+                    }
+
+                    @Nullable
+                    @Override
+                    public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+                        return mItemCallback.getChangePayload(oldList.get(oldItemPosition), newList.get(newItemPosition));
+                    }
+                }, true);
+            }
+
+            @Override
+            protected void onResult(@Nullable DiffUtil.DiffResult diffResult) {
+                publish(newList, newVersion, oldVersion, diffResult);
+            }
+
+            @Override
+            protected void onError(@NonNull Exception exception) {
+                super.onError(exception);
+                // publish without the changes, appliers replace the whole list
+                publish(newList, newVersion, oldVersion, null);
+            }
+        });
+    }
+
+    private void publish(@NonNull final List<E> list, final int version, final int previousVersion,
+                         @Nullable final DiffUtil.DiffResult diffResult) {
+        mDiffRunning = false;
+        mPublishedList = list;
+        mPublishedVersion = version;
+        mListener.onListUpdated(new ListUpdate<>(list, version, previousVersion, diffResult));
+        if (mSubmittedVersion != mPublishedVersion) {
+            diffSubmittedList();
+        }
+    }
+}
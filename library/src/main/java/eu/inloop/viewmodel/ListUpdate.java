@@ -0,0 +1,53 @@
+package eu.inloop.viewmodel;
+
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+
+/**
+ * A version of a list published by {@link ListState}, together with the changes from the previous version.
+ * Apply it to an adapter with {@link ListUpdateApplier}.
+ *
+ * @param <E> type of the list items
+ */
+public final class ListUpdate<E> {
+
+    @NonNull
+    private final List<E> mList;
+    private final int mVersion;
+    private final int mPreviousVersion;
+    @Nullable
+    private final DiffUtil.DiffResult mDiffResult;
+
+    ListUpdate(@NonNull final List<E> list, final int version, final int previousVersion, @Nullable final DiffUtil.DiffResult diffResult) {
+        mList = list;
+        mVersion = version;
+        mPreviousVersion = previousVersion;
+        mDiffResult = diffResult;
+    }
+
+    /**
+     * @return the complete, unmodifiable list
+     */
+    @NonNull
+    public List<E> getList() {
+        return mList;
+    }
+
+    /**
+     * @return identifier of this version, unique across all {@link ListState}s of the process
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @return the changes to apply to a list at the given version, or null if the whole list has to be replaced
+     */
+    @Nullable
+    DiffUtil.DiffResult getDiffFrom(final int version) {
+        return version == mPreviousVersion ? mDiffResult : null;
+    }
+}
@@ -0,0 +1,120 @@
+package eu.inloop.viewmodel;
+
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Adapter side of {@link ListState}. Holds the list shown by the adapter and applies each {@link ListUpdate}
+ * as the minimal set of insert/remove/move/change notifications. When the adapter missed a version, for
+ * example because the view was recreated, the whole list is replaced instead.
+ *
+ * <p>
+ * Requires {@code androidx.recyclerview:recyclerview}, which the library only compiles against.
+ *
+ * @param <E> type of the list items
+ */
+public class ListUpdateApplier<E> {
+
+    @NonNull
+    private List<E> mList = Collections.emptyList();
+    private int mVersion;
+
+    @Nullable
+    private final ListUpdateCallback mCallback;
+    private int mChangeCount;
+
+    @NonNull
+    private final ListUpdateCallback mCountingCallback = new ListUpdateCallback() {
+        @Override
+        public void onInserted(int position, int count) {
+            mChangeCount++;
+            if (mCallback != null) {
+                mCallback.onInserted(position, count);
+            }
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mChangeCount++;
+            if (mCallback != null) {
+                mCallback.onRemoved(position, count);
+            }
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mChangeCount++;
+            if (mCallback != null) {
+                mCallback.onMoved(fromPosition, toPosition);
+            }
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            mChangeCount++;
+            if (mCallback != null) {
+                mCallback.onChanged(position, count, payload);
+            }
+        }
+    };
+
+    /**
+     * For adapters without fine-grained notifications (for example a ListView adapter), check the result of
+     * {@link #apply(ListUpdate)} instead.
+     */
+    public ListUpdateApplier() {
+        this((ListUpdateCallback) null);
+    }
+
+    public ListUpdateApplier(@NonNull final RecyclerView.Adapter<?> adapter) {
+        this(new AdapterListUpdateCallback(adapter));
+    }
+
+    public ListUpdateApplier(@Nullable final ListUpdateCallback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * @return the list the adapter should show
+     */
+    @NonNull
+    public List<E> getList() {
+        return mList;
+    }
+
+    /**
+     * Switches to the list of the update and notifies the callback about the changes.
+     *
+     * @return true if the list changed
+     */
+    @MainThread
+    public boolean apply(@NonNull final ListUpdate<E> update) {
+        if (update.getVersion() == mVersion) {
+            return false;
+        }
+        final List<E> oldList = mList;
+        final DiffUtil.DiffResult diffResult = update.getDiffFrom(mVersion);
+        mList = update.getList();
+        mVersion = update.getVersion();
+        mChangeCount = 0;
+        if (diffResult != null) {
+            diffResult.dispatchUpdatesTo(mCountingCallback);
+        } else {
+            if (!oldList.isEmpty()) {
+                mCountingCallback.onRemoved(0, oldList.size());
+            }
+            if (!mList.isEmpty()) {
+                mCountingCallback.onInserted(0, mList.size());
+            }
+        }
+        return mChangeCount > 0;
+    }
+}
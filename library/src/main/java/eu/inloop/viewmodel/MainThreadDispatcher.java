@@ -0,0 +1,139 @@
+package eu.inloop.viewmodel;
+
+import java.util.ArrayList;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+/**
+ * Delivers actions posted by ViewModels from any thread to the main thread in batches. All actions pending at
+ * a display frame run in a single callback, in the order they were posted. Actions of a ViewModel that was
+ * destroyed in the meantime, or posted for an earlier lifecycle of a reused one, are dropped.
+ * <p>
+ * Each {@link ViewModelProvider} has its own dispatcher, see {@link AbstractViewModel#runOnMainThread(Runnable)}.
+ */
+final class MainThreadDispatcher {
+
+    @NonNull
+    private static final MainThreadDispatcher sDefault = new MainThreadDispatcher(ChoreographerFrameScheduler.getInstance());
+
+    /**
+     * @return dispatcher for ViewModels not created by a {@link ViewModelProvider}
+     */
+    @NonNull
+    static MainThreadDispatcher getDefault() {
+        return sDefault;
+    }
+
+    @NonNull
+    private final FrameScheduler mFrameScheduler;
+
+    @NonNull
+    private final Object mLock = new Object();
+    // guarded by mLock, the lists are swapped with the running ones for each batch
+    @NonNull
+    private ArrayList<AbstractViewModel<?>> mPendingOwners = new ArrayList<>();
+    @NonNull
+    private ArrayList<Runnable> mPendingActions = new ArrayList<>();
+    private boolean mScheduled;
+
+    // main thread only
+    @NonNull
+    private ArrayList<AbstractViewModel<?>> mRunningOwners = new ArrayList<>();
+    @NonNull
+    private ArrayList<Runnable> mRunningActions = new ArrayList<>();
+
+    @NonNull
+    private final Runnable mDispatchCallback = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+
+    MainThreadDispatcher(@NonNull final FrameScheduler frameScheduler) {
+        mFrameScheduler = frameScheduler;
+    }
+
+    /**
+     * @param generation {@link AbstractViewModel#getGeneration()} of the owner when the posting work started
+     * @return false if the action was dropped and will never run
+     */
+    @AnyThread
+    boolean post(@NonNull final AbstractViewModel<?> owner, final int generation, @NonNull final Runnable action) {
+        final boolean schedule;
+        synchronized (mLock) {
+            // actions pending when the owner was destroyed are removed by cancel(), before it can be reused
+            if (owner.isDestroyed() || owner.getGeneration() != generation) {
+                return false;
+            }
+            mPendingOwners.add(owner);
+            mPendingActions.add(action);
+            schedule = !mScheduled;
+            mScheduled = true;
+        }
+        if (schedule) {
+            mFrameScheduler.postFrameCallback(mDispatchCallback, 0);
+        }
+        return true;
+    }
+
+    /**
+     * Drops the pending actions of a destroyed ViewModel, so none of them runs once the instance is reused.
+     */
+    @MainThread
+    void cancel(@NonNull final AbstractViewModel<?> owner) {
+        synchronized (mLock) {
+            for (int i = mPendingOwners.size() - 1; i >= 0; i--) {
+                if (mPendingOwners.get(i) == owner) {
+                    mPendingOwners.remove(i);
+                    mPendingActions.remove(i);
+                }
+            }
+        }
+        // the batch that is running right now, if any
+        for (int i = 0; i < mRunningOwners.size(); i++) {
+            if (mRunningOwners.get(i) == owner) {
+                mRunningActions.set(i, null);
+            }
+        }
+    }
+
+    /**
+     * @return number of actions waiting for the next batch
+     */
+    @AnyThread
+    int getPendingCount() {
+        synchronized (mLock) {
+            return mPendingActions.size();
+        }
+    }
+
+    @MainThread
+    private void dispatch() {
+        final ArrayList<AbstractViewModel<?>> owners;
+        final ArrayList<Runnable> actions;
+        synchronized (mLock) {
+            owners = mPendingOwners;
+            actions = mPendingActions;
+            mPendingOwners = mRunningOwners;
+            mPendingActions = mRunningActions;
+            mRunningOwners = owners;
+            mRunningActions = actions;
+            mScheduled = false;
+        }
+        // actions posted while running go to the next batch
+        try {
+            for (int i = 0; i < actions.size(); i++) {
+                final Runnable action = actions.get(i);
+                if (action != null && !owners.get(i).isDestroyed()) {
+                    action.run();
+                }
+            }
+        } finally {
+            owners.clear();
+            actions.clear();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package eu.inloop.viewmodel;
+
+import java.util.ArrayList;
+
+import androidx.annotation.NonNull;
+
+/**
+ * {@link FrameScheduler} with a fake clock for unit tests. Time only moves and frames only run when
+ * {@link #advanceFrame()} or {@link #advanceTimeBy(long)} is called, on the calling thread.
+ */
+public class ManualFrameScheduler implements FrameScheduler {
+
+    public static final long FRAME_MILLIS = 16;
+
+    private long mTime;
+
+    @NonNull
+    private final ArrayList<Runnable> mCallbacks = new ArrayList<>();
+    @NonNull
+    private final ArrayList<Long> mDueTimes = new ArrayList<>();
+
+    @Override
+    public void postFrameCallback(@NonNull final Runnable callback, final long delayMillis) {
+        mCallbacks.add(callback);
+        mDueTimes.add(mTime + Math.max(delayMillis, 0));
+    }
+
+    @Override
+    public long uptimeMillis() {
+        return mTime;
+    }
+
+    /**
+     * Moves the clock by one frame and runs the callbacks that are due.
+     */
+    public void advanceFrame() {
+        mTime += FRAME_MILLIS;
+        final ArrayList<Runnable> due = new ArrayList<>();
+        for (int i = 0; i < mCallbacks.size(); ) {
+            if (mDueTimes.get(i) <= mTime) {
+                due.add(mCallbacks.remove(i));
+                mDueTimes.remove(i);
+            } else {
+                i++;
+            }
+        }
+        for (final Runnable callback : due) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Moves the clock frame by frame until the given time passed, running callbacks as they become due.
+     */
+    public void advanceTimeBy(final long millis) {
+        final long end = mTime + millis;
+        while (mTime + FRAME_MILLIS <= end) {
+            advanceFrame();
+        }
+        mTime = end;
+    }
+
+    /**
+     * @return number of callbacks waiting for a frame
+     */
+    public int getPendingCallbackCount() {
+        return mCallbacks.size();
+    }
+}
@@ -0,0 +1,22 @@
+package eu.inloop.viewmodel;
+
+/**
+ * Implemented by ViewModels whose instances may be reused for new screens instead of being garbage collected,
+ * which avoids allocating the ViewModel and its buffers again on screens created and destroyed at a high rate
+ * (for example pages of a ViewPager).
+ * <p>
+ * After {@link AbstractViewModel#onDestroy()} the instance is put into the recycle pool of the {@link ViewModelProvider},
+ * up to {@link ViewModelProvider#setRecyclePoolSize(int)} instances per class. Obtain a pooled instance in
+ * {@code createViewModel()} with {@link ViewModelProvider#obtainRecycledViewModel(Class)}. It then goes through the
+ * lifecycle again, starting with {@link AbstractViewModel#onCreate(android.os.Bundle, android.os.Bundle)}.
+ */
+public interface RecyclableViewModel {
+
+    /**
+     * Resets the instance to the state of a newly constructed one, keeping only allocations that can be reused
+     * (cleared collections, buffers). {@link ListState} and {@link ViewState} fields are reset by the library, other
+     * objects tied to the previous lifecycle must be recreated. Called on the main thread after
+     * {@link AbstractViewModel#onDestroy()}.
+     */
+    void onRecycle();
+}
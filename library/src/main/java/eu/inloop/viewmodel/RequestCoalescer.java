@@ -0,0 +1,202 @@
+package eu.inloop.viewmodel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Runs identical loads requested by several ViewModels at the same time only once.
+ * <p>
+ * Requests are identified by a key. While a load for the key is in flight, further requests subscribe to it
+ * instead of starting a new one, and the result is delivered to all subscribers on the main thread. A subscription
+ * is cancelled after {@link AbstractViewModel#onDestroy()} of the ViewModel that made it, and the load is cancelled
+ * once it has no subscribers left. Completed results are not kept, see {@link ResultCache} for that.
+ * <p>
+ * Loads run on the background pool of {@link ViewModelTask}.
+ */
+public class RequestCoalescer {
+
+    public interface Loader<V> {
+
+        @WorkerThread
+        V load() throws Exception;
+    }
+
+    public interface Callback<V> {
+
+        @MainThread
+        void onResult(@Nullable V value);
+
+        @MainThread
+        void onError(@NonNull Exception exception);
+    }
+
+    /**
+     * Subscription of one ViewModel to a load.
+     */
+    public final class Subscription implements Cancellable {
+
+        @NonNull
+        private final AbstractViewModel<?> mOwner;
+        @NonNull
+        private final Callback<Object> mCallback;
+        @Nullable
+        private Request mRequest;
+        private volatile boolean mCancelled;
+
+        Subscription(@NonNull final AbstractViewModel<?> owner, @NonNull final Callback<Object> callback) {
+            mOwner = owner;
+            mCallback = callback;
+        }
+
+        /**
+         * Stops the delivery of the result to this subscriber. The load is cancelled if nobody else subscribed to it.
+         */
+        @Override
+        public void cancel() {
+            mCancelled = true;
+            mOwner.onTaskFinished(this);
+            Request orphanedRequest = null;
+            synchronized (mLock) {
+                if (mRequest != null) {
+                    mRequest.mSubscriptions.remove(this);
+                    if (mRequest.mSubscriptions.isEmpty() && mRequests.get(mRequest.mKey) == mRequest) {
+                        mRequests.remove(mRequest.mKey);
+                        orphanedRequest = mRequest;
+                    }
+                    mRequest = null;
+                }
+            }
+            if (orphanedRequest != null) {
+                orphanedRequest.cancel();
+            }
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @MainThread
+        void deliver(@Nullable final Object value, @Nullable final Exception exception) {
+            mOwner.onTaskFinished(this);
+            if (mCancelled) {
+                return;
+            }
+            if (exception != null) {
+                mCallback.onError(exception);
+            } else {
+                mCallback.onResult(value);
+            }
+        }
+    }
+
+    private final class Request extends ViewModelTask<Void, Object> {
+
+        @NonNull
+        final String mKey;
+        @NonNull
+        private final Loader<?> mLoader;
+        // guarded by mLock
+        @NonNull
+        final ArrayList<Subscription> mSubscriptions = new ArrayList<>(2);
+
+        Request(@NonNull final String key, @NonNull final Loader<?> loader) {
+            mKey = key;
+            mLoader = loader;
+        }
+
+        @Override
+        protected Object doInBackground() throws Exception {
+            return mLoader.load();
+        }
+
+        @Override
+        protected void onResult(@Nullable final Object value) {
+            deliver(value, null);
+        }
+
+        @Override
+        protected void onError(@NonNull final Exception exception) {
+            deliver(null, exception);
+        }
+
+        private void deliver(@Nullable final Object value, @Nullable final Exception exception) {
+            final Subscription[] subscriptions;
+            synchronized (mLock) {
+                if (mRequests.get(mKey) == this) {
+                    mRequests.remove(mKey);
+                }
+                subscriptions = mSubscriptions.toArray(new Subscription[mSubscriptions.size()]);
+                mSubscriptions.clear();
+                for (final Subscription subscription : subscriptions) {
+                    subscription.mRequest = null;
+                }
+            }
+            for (final Subscription subscription : subscriptions) {
+                subscription.deliver(value, exception);
+            }
+        }
+    }
+
+    @NonNull
+    private final Object mLock = new Object();
+    // loads in flight by key, guarded by mLock
+    @NonNull
+    private final HashMap<String, Request> mRequests = new HashMap<>();
+
+    /**
+     * Subscribes the ViewModel to the load identified by the key, starting the loader if no such load is in flight.
+     * All loaders requested with the same key must produce the same type of value.
+     *
+     * @param owner    ViewModel the result is delivered to, the subscription is cancelled after its onDestroy()
+     * @param key      identifies the requested resource
+     * @param loader   loads the resource on a background thread, only used if no load for the key is in flight
+     * @param callback receives the result on the main thread
+     * @return the subscription, already cancelled if the owner was destroyed
+     */
+    @NonNull
+    public <V> Subscription request(@NonNull final AbstractViewModel<?> owner,
+                                    @NonNull final String key,
+                                    @NonNull final Loader<V> loader,
+                                    @NonNull final Callback<V> callback) {
+        // a load in flight for the key may have been started by another loader, the values only type check by the
+        // contract that loaders of the same key produce the same type
+        @SuppressWarnings("unchecked")
+        final Callback<Object> objectCallback = (Callback<Object>) callback;
+        final Subscription subscription = new Subscription(owner, objectCallback);
+        if (!owner.addTask(subscription)) {
+            subscription.mCancelled = true;
+            return subscription;
+        }
+        final Request startedRequest;
+        synchronized (mLock) {
+            Request request = mRequests.get(key);
+            if (request == null) {
+                request = new Request(key, loader);
+                mRequests.put(key, request);
+                startedRequest = request;
+            } else {
+                startedRequest = null;
+            }
+            request.mSubscriptions.add(subscription);
+            subscription.mRequest = request;
+        }
+        if (startedRequest != null) {
+            startedRequest.start(null, ViewModelTask.PRIORITY_DEFAULT);
+        }
+        return subscription;
+    }
+
+    /**
+     * @return true if a load for the key is in flight
+     */
+    public boolean isInFlight(@NonNull final String key) {
+        synchronized (mLock) {
+            return mRequests.containsKey(key);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package eu.inloop.viewmodel;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+/**
+ * Process wide cache of loaded results, so a screen opened again shortly after its ViewModel was destroyed can
+ * render immediately.
+ * <p>
+ * The cache holds at most {@code maxSize} entries (or the sum of {@link #sizeOf(String, Object)}), the least
+ * recently used entries are dropped first. Every entry is fresh for its time to live. An expired entry is still
+ * returned until it is dropped, {@link #load(AbstractViewModel, String, long, RequestCoalescer.Loader, RequestCoalescer.Callback)}
+ * delivers it and refreshes it in the background (stale-while-revalidate).
+ * <p>
+ * Cached values are shared between ViewModels and must not be modified.
+ */
+public class ResultCache {
+
+    private static final int DEFAULT_MAX_SIZE = 32;
+
+    @Nullable
+    private static ResultCache sInstance;
+    private static boolean sComponentCallbacksRegistered;
+
+    /**
+     * @return the default cache, holding up to 32 entries
+     */
+    @NonNull
+    public static synchronized ResultCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new ResultCache(DEFAULT_MAX_SIZE);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Trims the default cache whenever the application receives {@link ComponentCallbacks2#onTrimMemory(int)}, so it
+     * is trimmed once per event instead of once per activity. Only the first call registers the callbacks,
+     * {@link eu.inloop.viewmodel.base.ViewModelBaseEmptyActivity} makes it. Without that activity, call it from
+     * {@link android.app.Application#onCreate()}.
+     *
+     * @param context any context of the application
+     */
+    public static void registerComponentCallbacks(@NonNull final Context context) {
+        synchronized (ResultCache.class) {
+            if (sComponentCallbacksRegistered) {
+                return;
+            }
+            sComponentCallbacksRegistered = true;
+        }
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                final ResultCache instance;
+                synchronized (ResultCache.class) {
+                    // not created yet, nothing to trim
+                    instance = sInstance;
+                }
+                if (instance != null) {
+                    instance.onTrimMemory(level);
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(@NonNull Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                onTrimMemory(TRIM_MEMORY_COMPLETE);
+            }
+        });
+    }
+
+    private static final class Entry {
+        @Nullable
+        final Object mValue;
+        final long mExpiryTime;
+
+        Entry(@Nullable final Object value, final long expiryTime) {
+            mValue = value;
+            mExpiryTime = expiryTime;
+        }
+
+        boolean isFresh() {
+            return SystemClock.elapsedRealtime() < mExpiryTime;
+        }
+    }
+
+    @NonNull
+    private final LruCache<String, Entry> mEntries;
+    @NonNull
+    private final RequestCoalescer mRequestCoalescer = new RequestCoalescer();
+
+    /**
+     * @param maxSize maximum number of entries, or maximum sum of {@link #sizeOf(String, Object)} if overridden
+     */
+    public ResultCache(final int maxSize) {
+        mEntries = new LruCache<String, Entry>(maxSize) {
+            @Override
+            protected int sizeOf(@NonNull String key, @NonNull Entry entry) {
+                return ResultCache.this.sizeOf(key, entry.mValue);
+            }
+        };
+    }
+
+    /**
+     * Override to bound the cache by something else than the number of entries, for example by the number of items
+     * of cached lists.
+     *
+     * @return size of the value in the units of {@code maxSize}, 1 by default
+     */
+    protected int sizeOf(@NonNull final String key, @Nullable final Object value) {
+        return 1;
+    }
+
+    /**
+     * @param timeToLiveMillis how long the value is fresh
+     */
+    public void put(@NonNull final String key, @Nullable final Object value, final long timeToLiveMillis) {
+        mEntries.put(key, new Entry(value, SystemClock.elapsedRealtime() + timeToLiveMillis));
+    }
+
+    /**
+     * @return the cached value, fresh or expired, or null if there is none
+     */
+    @Nullable
+    public <V> V get(@NonNull final String key) {
+        final Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        // the caller knows the type it cached under the key
+        @SuppressWarnings("unchecked")
+        final V value = (V) entry.mValue;
+        return value;
+    }
+
+    /**
+     * @return true if a value is cached for the key and its time to live didn't pass yet
+     */
+    public boolean isFresh(@NonNull final String key) {
+        final Entry entry = mEntries.get(key);
+        return entry != null && entry.isFresh();
+    }
+
+    public void invalidate(@NonNull final String key) {
+        mEntries.remove(key);
+    }
+
+    public void clear() {
+        mEntries.evictAll();
+    }
+
+    /**
+     * Delivers the cached value to the callback right away, on the calling thread. Unless the value is fresh,
+     * the loader runs in the background, identical loads in flight are coalesced, and the loaded value is cached
+     * and delivered to the callback again on the main thread.
+     *
+     * @param owner            ViewModel the value is delivered to, the refresh is cancelled after its onDestroy()
+     * @param timeToLiveMillis how long the loaded value is fresh
+     * @return the subscription to the refresh, or null if the cached value was fresh
+     */
+    @Nullable
+    public <V> RequestCoalescer.Subscription load(@NonNull final AbstractViewModel<?> owner,
+                                                  @NonNull final String key,
+                                                  final long timeToLiveMillis,
+                                                  @NonNull final RequestCoalescer.Loader<V> loader,
+                                                  @NonNull final RequestCoalescer.Callback<V> callback) {
+        final Entry entry = mEntries.get(key);
+        if (entry != null) {
+            // cached by an earlier load of the key, loaders of the same key produce the same type
+            @SuppressWarnings("unchecked")
+            final V value = (V) entry.mValue;
+            callback.onResult(value);
+            if (entry.isFresh()) {
+                return null;
+            }
+        }
+        return mRequestCoalescer.request(owner, key, loader, new RequestCoalescer.Callback<V>() {
+            @Override
+            public void onResult(@Nullable V value) {
+                put(key, value, timeToLiveMillis);
+                callback.onResult(value);
+            }
+
+            @Override
+            public void onError(@NonNull Exception exception) {
+                callback.onError(exception);
+            }
+        });
+    }
+
+    /**
+     * Call from {@link ComponentCallbacks2#onTrimMemory(int)} of the application, see
+     * {@link #registerComponentCallbacks(Context)} for the default cache. Trims the cache to half of its maximum size for
+     * {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW} and {@link ComponentCallbacks2#TRIM_MEMORY_BACKGROUND},
+     * drops all entries for {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL} and
+     * {@link ComponentCallbacks2#TRIM_MEMORY_MODERATE} or higher.
+     *
+     * @param level trim memory level
+     */
+    public void onTrimMemory(final int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mEntries.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mEntries.trimToSize(mEntries.maxSize() / 2);
+        }
+    }
+}
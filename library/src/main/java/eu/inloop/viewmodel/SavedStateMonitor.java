@@ -0,0 +1,102 @@
+package eu.inloop.viewmodel;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Measures the parceled size of the state each ViewModel saves in {@link AbstractViewModel#onSaveInstanceState(Bundle)}
+ * and the time spent saving it. Install with {@link ViewModelHelper#setSavedStateMonitor(SavedStateMonitor)}.
+ * <p>
+ * Measuring parcels the state once more, so in production use {@link #setSampleRate(int)} to measure only
+ * every n-th save.
+ */
+public class SavedStateMonitor {
+
+    private static final String TAG = "SavedStateMonitor"; //NON-NLS
+
+    public interface Listener {
+
+        /**
+         * Called on the main thread after a sampled ViewModel saved its state.
+         *
+         * @param viewModelClass class of the ViewModel
+         * @param sizeBytes      parceled size of the saved state
+         * @param durationNanos  time spent in {@link AbstractViewModel#onSaveInstanceState(Bundle)}
+         */
+        void onViewModelStateSaved(@NonNull Class<?> viewModelClass, int sizeBytes, long durationNanos);
+    }
+
+    @Nullable
+    private final Listener mListener;
+    @NonNull
+    private final AtomicInteger mSaveCounter = new AtomicInteger();
+
+    private volatile int mSampleRate = 1;
+    private volatile int mWarningThresholdBytes = Integer.MAX_VALUE;
+    private volatile int mFailureThresholdBytes = Integer.MAX_VALUE;
+
+    /**
+     * @param listener receives the measurements, may be null if only the thresholds are used
+     */
+    public SavedStateMonitor(@Nullable final Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @param sampleRate measure one of every sampleRate saves, 1 measures all of them
+     */
+    public void setSampleRate(final int sampleRate) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("Sample rate must be at least 1"); //NON-NLS
+        }
+        mSampleRate = sampleRate;
+    }
+
+    /**
+     * @param thresholdBytes log a warning when a ViewModel state is larger than this
+     */
+    public void setWarningThreshold(final int thresholdBytes) {
+        mWarningThresholdBytes = thresholdBytes;
+    }
+
+    /**
+     * @param thresholdBytes throw an {@link IllegalStateException} when a ViewModel state is larger than this,
+     *                       useful in debug builds and tests
+     */
+    public void setFailureThreshold(final int thresholdBytes) {
+        mFailureThresholdBytes = thresholdBytes;
+    }
+
+    boolean shouldSample() {
+        return mSaveCounter.getAndIncrement() % mSampleRate == 0;
+    }
+
+    void onStateSaved(@NonNull final Class<?> viewModelClass, final int sizeBytes, final long durationNanos) {
+        if (sizeBytes > mFailureThresholdBytes) {
+            throw new IllegalStateException(viewModelClass.getName() + " saved " + sizeBytes //NON-NLS
+                    + " bytes of state, limit is " + mFailureThresholdBytes); //NON-NLS
+        }
+        if (sizeBytes > mWarningThresholdBytes) {
+            Log.w(TAG, viewModelClass.getName() + " saved " + sizeBytes + " bytes of state"); //NON-NLS
+        }
+        if (mListener != null) {
+            mListener.onViewModelStateSaved(viewModelClass, sizeBytes, durationNanos);
+        }
+    }
+
+    static int sizeOf(@NonNull final Bundle state) {
+        final Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(state);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package eu.inloop.viewmodel;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import eu.inloop.viewmodel.base.CreateViewModelCallback;
+
+/**
+ * Application wide store of ViewModels shared by key between screens of different activities.
+ * <p>
+ * Each screen holding a shared ViewModel is counted once, no matter how often it is recreated.
+ * The ViewModel is destroyed when the last screen holding it is removed. Screens opt in with
+ * {@link ViewModelHelper#setSharedViewModelKey(String)}.
+ * <p>
+ * A shared ViewModel is bound to the view of the screen that was bound last. It is started when the first of
+ * its holders starts and stopped when the last started one stops, so {@link AbstractViewModel#onStart()} and
+ * {@link AbstractViewModel#onStop()} keep alternating while screens of different activities overlap.
+ * Shared ViewModels are not evicted by {@link ViewModelProvider#onTrimMemory(int)}.
+ */
+public final class SharedViewModelStore {
+
+    @NonNull
+    private static final SharedViewModelStore sInstance = new SharedViewModelStore();
+
+    @NonNull
+    public static SharedViewModelStore getInstance() {
+        return sInstance;
+    }
+
+    private static final class Entry {
+        @NonNull
+        final AbstractViewModel<? extends IView> mViewModel;
+        @NonNull
+        final HashSet<Long> mHolders = new HashSet<>();
+        @NonNull
+        final HashSet<Long> mStartedHolders = new HashSet<>();
+
+        Entry(@NonNull final AbstractViewModel<? extends IView> viewModel) {
+            mViewModel = viewModel;
+        }
+    }
+
+    @NonNull
+    private final Object mLock = new Object();
+    @NonNull
+    private final HashMap<String, Entry> mEntries = new HashMap<>();
+
+    private SharedViewModelStore() {
+    }
+
+    /**
+     * Returns the ViewModel stored under the key, creating it if needed, and registers the screen as its holder.
+     * Acquiring again from the same screen has no effect on the holder count.
+     *
+     * @param key      key of the shared ViewModel
+     * @param holderId identifier of the screen holding the ViewModel
+     */
+    @NonNull
+    <T extends IView> AbstractViewModel<T> acquire(@NonNull final String key, final long holderId,
+                                                   @NonNull final CreateViewModelCallback createViewModelCallback) {
+        synchronized (mLock) {
+            Entry entry = mEntries.get(key);
+            if (entry == null) {
+                final AbstractViewModel<? extends IView> viewModel = createViewModelCallback.onViewModelRequested();
+                if (viewModel == null) {
+                    throw new IllegalStateException("CreateViewModelCallback returned null for shared ViewModel " + key); //NON-NLS
+                }
+                viewModel.setUniqueIdentifier(ViewModelHelper.nextScreenId());
+                entry = new Entry(viewModel);
+                mEntries.put(key, entry);
+            }
+            entry.mHolders.add(holderId);
+            //noinspection unchecked
+            return (AbstractViewModel<T>) entry.mViewModel;
+        }
+    }
+
+    /**
+     * Unregisters the screen as a holder of the ViewModel.
+     *
+     * @return the ViewModel if the screen was its last holder, it is no longer stored and has to be destroyed
+     * by the caller
+     */
+    @Nullable
+    AbstractViewModel<? extends IView> release(@NonNull final String key, final long holderId) {
+        synchronized (mLock) {
+            final Entry entry = mEntries.get(key);
+            if (entry == null || !entry.mHolders.remove(holderId)) {
+                return null;
+            }
+            entry.mStartedHolders.remove(holderId);
+            if (!entry.mHolders.isEmpty()) {
+                return null;
+            }
+            mEntries.remove(key);
+            return entry.mViewModel;
+        }
+    }
+
+    /**
+     * Registers the holder as started, repeated calls without {@link #stop(String, long)} have no effect.
+     *
+     * @return true if it is the first started holder and the ViewModel has to be started by the caller
+     */
+    boolean start(@NonNull final String key, final long holderId) {
+        synchronized (mLock) {
+            final Entry entry = mEntries.get(key);
+            return entry != null && entry.mStartedHolders.add(holderId) && entry.mStartedHolders.size() == 1;
+        }
+    }
+
+    /**
+     * Unregisters the holder as started.
+     *
+     * @return true if it was the last started holder and the ViewModel has to be stopped by the caller
+     */
+    boolean stop(@NonNull final String key, final long holderId) {
+        synchronized (mLock) {
+            final Entry entry = mEntries.get(key);
+            return entry != null && entry.mStartedHolders.remove(holderId) && entry.mStartedHolders.isEmpty();
+        }
+    }
+
+    /**
+     * @return the number of screens holding the ViewModel stored under the key, 0 if there is none
+     */
+    public int getHolderCount(@NonNull final String key) {
+        synchronized (mLock) {
+            final Entry entry = mEntries.get(key);
+            return entry == null ? 0 : entry.mHolders.size();
+        }
+    }
+
+    /**
+     * @return the ViewModel stored under the key, or null if no screen holds it
+     */
+    @Nullable
+    public AbstractViewModel<? extends IView> peek(@NonNull final String key) {
+        synchronized (mLock) {
+            final Entry entry = mEntries.get(key);
+            return entry == null ? null : entry.mViewModel;
+        }
+    }
+}
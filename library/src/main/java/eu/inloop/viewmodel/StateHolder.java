@@ -0,0 +1,21 @@
+package eu.inloop.viewmodel;
+
+import androidx.annotation.MainThread;
+
+/**
+ * State owned by a ViewModel, like {@link ViewState} and {@link ListState}, which has to start over when a
+ * {@link RecyclableViewModel} is reused. Registered with its owner on construction.
+ */
+interface StateHolder {
+
+    /**
+     * Drops everything tied to the previous lifecycle, called when the owner is put into the recycle pool.
+     */
+    @MainThread
+    void reset();
+
+    /**
+     * Called when the owner is taken out of the recycle pool, before it is created again.
+     */
+    void onReuse();
+}
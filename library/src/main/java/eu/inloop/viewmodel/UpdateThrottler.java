@@ -0,0 +1,131 @@
+package eu.inloop.viewmodel;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+/**
+ * Conflates high-frequency updates: only the latest value for each key is kept and delivered to the sink at
+ * the next display frame, so at most one update per key and frame. With a minimum interval, deliveries are
+ * additionally spaced at least that far apart, which suits sinks that aren't drawn, like logging or analytics.
+ * <p>
+ * Must be used on the main thread (or the thread driving a {@link ManualFrameScheduler}).
+ *
+ * @param <V> type of the update values
+ */
+public class UpdateThrottler<V> {
+
+    public interface Sink<V> {
+
+        void onUpdate(@NonNull String key, @NonNull V value);
+    }
+
+    @NonNull
+    private final FrameScheduler mFrameScheduler;
+    @NonNull
+    private final Sink<V> mSink;
+
+    private long mMinIntervalMillis;
+    private long mLastDispatchTime;
+    private boolean mDispatched;
+    private boolean mScheduled;
+
+    @NonNull
+    private final LinkedHashMap<String, V> mPending = new LinkedHashMap<>();
+    // reused by dispatch(), the sink may post new values while being called
+    @NonNull
+    private final ArrayList<String> mDispatchKeys = new ArrayList<>();
+    @NonNull
+    private final ArrayList<V> mDispatchValues = new ArrayList<>();
+
+    @NonNull
+    private final Runnable mFrameCallback = new Runnable() {
+        @Override
+        public void run() {
+            mScheduled = false;
+            dispatch();
+        }
+    };
+
+    public UpdateThrottler(@NonNull final FrameScheduler frameScheduler, @NonNull final Sink<V> sink) {
+        this(frameScheduler, sink, 0);
+    }
+
+    /**
+     * @param minIntervalMillis minimum time between two deliveries, 0 to deliver at every frame
+     */
+    public UpdateThrottler(@NonNull final FrameScheduler frameScheduler, @NonNull final Sink<V> sink, final long minIntervalMillis) {
+        mFrameScheduler = frameScheduler;
+        mSink = sink;
+        mMinIntervalMillis = minIntervalMillis;
+    }
+
+    public void setMinInterval(final long minIntervalMillis) {
+        mMinIntervalMillis = minIntervalMillis;
+    }
+
+    /**
+     * Replaces the pending value for the key and schedules a delivery if none is scheduled yet.
+     */
+    @MainThread
+    public void post(@NonNull final String key, @NonNull final V value) {
+        mPending.put(key, value);
+        if (!mScheduled) {
+            mScheduled = true;
+            mFrameScheduler.postFrameCallback(mFrameCallback, getRemainingInterval());
+        }
+    }
+
+    /**
+     * Drops the pending value for the key.
+     */
+    @MainThread
+    public void cancel(@NonNull final String key) {
+        mPending.remove(key);
+    }
+
+    /**
+     * Drops all pending values.
+     */
+    @MainThread
+    public void cancelAll() {
+        mPending.clear();
+    }
+
+    private long getRemainingInterval() {
+        if (mMinIntervalMillis <= 0 || !mDispatched) {
+            return 0;
+        }
+        return Math.max(0, mLastDispatchTime + mMinIntervalMillis - mFrameScheduler.uptimeMillis());
+    }
+
+    private void dispatch() {
+        if (mPending.isEmpty()) {
+            return;
+        }
+        final long remainingInterval = getRemainingInterval();
+        if (remainingInterval > 0) {
+            mScheduled = true;
+            mFrameScheduler.postFrameCallback(mFrameCallback, remainingInterval);
+            return;
+        }
+        mLastDispatchTime = mFrameScheduler.uptimeMillis();
+        mDispatched = true;
+        for (final Map.Entry<String, V> update : mPending.entrySet()) {
+            mDispatchKeys.add(update.getKey());
+            mDispatchValues.add(update.getValue());
+        }
+        mPending.clear();
+        try {
+            for (int i = 0; i < mDispatchKeys.size(); i++) {
+                mSink.onUpdate(mDispatchKeys.get(i), mDispatchValues.get(i));
+            }
+        } finally {
+            mDispatchKeys.clear();
+            mDispatchValues.clear();
+        }
+    }
+}
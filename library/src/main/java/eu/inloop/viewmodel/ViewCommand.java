@@ -0,0 +1,13 @@
+package eu.inloop.viewmodel;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A call to the view, see {@link AbstractViewModel#runOnView(String, ViewCommand)}.
+ *
+ * @param <T> type of the view
+ */
+public interface ViewCommand<T extends IView> {
+
+    void execute(@NonNull T view);
+}
@@ -3,9 +3,12 @@ package eu.inloop.viewmodel;
 import android.app.Activity;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
-import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -14,17 +17,183 @@ import eu.inloop.viewmodel.base.CreateViewModelCallback;
 
 public class ViewModelHelper<T extends IView, R extends AbstractViewModel<T>> {
 
+    /**
+     * Legacy key, screens saved by older versions stored a random UUID string here.
+     */
+    @NonNull
+    private static final String STATE_STRING_SCREEN_IDENTIFIER = "class eu.inloop.viewmodel.ViewModelHelper.state.string.identifier"; //NON-NLS
+    @NonNull
+    private static final String STATE_LONG_SCREEN_IDENTIFIER = "eu.inloop.viewmodel.ViewModelHelper.state.long.identifier"; //NON-NLS
     @NonNull
-    private static final String STATE_STRING_SCREEN_IDENTIFIER = ViewModelHelper.class + ".state.string.identifier"; //NON-NLS
+    private static final String STATE_BOOLEAN_STATE_IN_STORE = "eu.inloop.viewmodel.ViewModelHelper.state.boolean.in_store"; //NON-NLS
+    @NonNull
+    private static final String ARG_LONG_PREFETCHED_SCREEN_IDENTIFIER = "eu.inloop.viewmodel.ViewModelHelper.arg.long.prefetched"; //NON-NLS
+
+    /**
+     * Source of process-unique screen identifiers. The counter is seeded from the wall clock so
+     * identifiers restored from a Bundle written by a previous (killed) process don't clash with
+     * identifiers handed out by this process.
+     */
+    @NonNull
+    private static final AtomicLong sNextScreenId = new AtomicLong(System.currentTimeMillis() << 16);
+
+    /**
+     * Pass the identifier returned by {@link ViewModelProvider#prefetchViewModel(CreateViewModelCallback, Bundle, Executor)}
+     * to the screen, so it adopts the prefetched ViewModel instead of creating a new one.
+     *
+     * @param arguments Fragment arguments or Activity Intent extras of the screen
+     * @param screenId  identifier returned by {@link ViewModelProvider#prefetchViewModel(CreateViewModelCallback, Bundle, Executor)}
+     */
+    public static void putPrefetchedScreenId(@NonNull final Bundle arguments, final long screenId) {
+        arguments.putLong(ARG_LONG_PREFETCHED_SCREEN_IDENTIFIER, screenId);
+    }
+
+    static long nextScreenId() {
+        return sNextScreenId.incrementAndGet();
+    }
+
+    @NonNull
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    @Nullable
+    private static volatile FileSavedStateStore sSavedStateStore;
+    @Nullable
+    private static volatile SavedStateMonitor sSavedStateMonitor;
+    @Nullable
+    private static volatile LifecycleTracer sLifecycleTracer;
+    @Nullable
+    private static volatile ViewModelLeakWatcher sLeakWatcher;
+
+    /**
+     * Saves the ViewModel state into the given store instead of the instance state Bundle.
+     * The Bundle then only contains a marker, which keeps large states clear of the Binder transaction limit.
+     * Install it before the first screen is created, screens created earlier don't know their task and can't be restored from it.
+     *
+     * @param savedStateStore store to use, or null to save directly into the Bundle (default)
+     */
+    public static void setSavedStateStore(@Nullable final FileSavedStateStore savedStateStore) {
+        sSavedStateStore = savedStateStore;
+    }
+
+    /**
+     * Reports the size of the state saved by each ViewModel and the time it took.
+     *
+     * @param savedStateMonitor monitor to use, or null to disable the measurement (default)
+     */
+    public static void setSavedStateMonitor(@Nullable final SavedStateMonitor savedStateMonitor) {
+        sSavedStateMonitor = savedStateMonitor;
+    }
+
+    /**
+     * Times the lifecycle callbacks of all ViewModels and emits system trace sections for them.
+     *
+     * @param lifecycleTracer tracer to use, or null to disable tracing (default)
+     */
+    public static void setLifecycleTracer(@Nullable final LifecycleTracer lifecycleTracer) {
+        sLifecycleTracer = lifecycleTracer;
+    }
 
+    /**
+     * Watches every destroyed ViewModel and reports those that are not garbage collected.
+     *
+     * @param leakWatcher watcher to use, or null to disable the leak detection (default)
+     */
+    public static void setLeakWatcher(@Nullable final ViewModelLeakWatcher leakWatcher) {
+        sLeakWatcher = leakWatcher;
+    }
+
+    @Nullable
+    static ViewModelLeakWatcher getLeakWatcher() {
+        return sLeakWatcher;
+    }
+
+    private long mScreenId;
+    // task of the activity, locates the files of the FileSavedStateStore
+    private int mTaskId;
+
+    @Nullable
+    private IViewModelProvider mParentScope;
+
+    @Nullable
+    private String mSharedViewModelKey;
+    // view bound by this screen to a shared ViewModel, other screens may have bound theirs since
     @Nullable
-    private String mScreenId;
+    private T mSharedBoundView;
 
     @Nullable
     private R mViewModel;
 
+    // kept to recreate a ViewModel evicted by ViewModelProvider#onTrimMemory
+    @Nullable
+    private ViewModelProvider mViewModelProvider;
+    @Nullable
+    private CreateViewModelCallback mCreateViewModelCallback;
+    @Nullable
+    private Bundle mArguments;
+
     private boolean mModelRemoved;
     private boolean mOnSaveInstanceCalled;
+    private boolean mStarted;
+
+    // lazy creation, see setLazyCreation()
+    private boolean mLazyCreation;
+    private boolean mLazyCreatePending;
+    @Nullable
+    private Bundle mLazyCreateState;
+
+    // state queued while the ViewModel is being created on a background executor
+    private boolean mCreatePending;
+    @Nullable
+    private T mPendingView;
+    private boolean mPendingStart;
+    private boolean mPendingRemove;
+
+    /**
+     * Keeps the ViewModel of this screen in the child scope of a parent screen instead of the activity's
+     * {@link ViewModelProvider}, for example pass the parent fragment if it implements {@link IViewModelProvider}.
+     * Removing the parent screen then frees the ViewModels of all nested screens. Call before
+     * {@link #onCreate(Activity, Bundle, CreateViewModelCallback, Bundle)}.
+     *
+     * @param parentScope parent screen, or null to use the activity (default)
+     */
+    public void setParentScope(@Nullable final IViewModelProvider parentScope) {
+        mParentScope = parentScope;
+    }
+
+    /**
+     * @return the scope for ViewModels of screens nested in this one, or null if this screen has no scope of its own
+     * (no ViewModel, or a shared one)
+     * @see ViewModelProvider#getChildScope(long)
+     */
+    @Nullable
+    public ViewModelProvider getChildViewModelProvider() {
+        if (mViewModelProvider == null || mModelRemoved) {
+            return null;
+        }
+        return mViewModelProvider.getChildScope(mScreenId);
+    }
+
+    /**
+     * Makes this screen hold the ViewModel stored under the given key in the {@link SharedViewModelStore}
+     * instead of a ViewModel of its own. Call before {@link #onCreate(Activity, Bundle, CreateViewModelCallback, Bundle)}.
+     *
+     * @param sharedViewModelKey key of the shared ViewModel, or null for a ViewModel owned by this screen (default)
+     */
+    public void setSharedViewModelKey(@Nullable final String sharedViewModelKey) {
+        mSharedViewModelKey = sharedViewModelKey;
+    }
+
+    /**
+     * Defers the creation of a ViewModel that is not cached yet until the first {@link #setView(IView)} or
+     * {@link #getViewModel()} call, so screens that never show their view don't pay for it. The ViewModel is
+     * then created synchronously, an executor passed to onCreate is not used. Call before
+     * {@link #onCreate(Activity, Bundle, CreateViewModelCallback, Bundle)}.
+     *
+     * @param lazyCreation true to create the ViewModel on first use, false to create it in onCreate (default)
+     */
+    public void setLazyCreation(final boolean lazyCreation) {
+        mLazyCreation = lazyCreation;
+    }
 
     /**
      * Call from {@link android.app.Activity#onCreate(android.os.Bundle)} or
@@ -41,6 +210,22 @@ public class ViewModelHelper<T extends IView, R extends AbstractViewModel<T>> {
                          @Nullable Bundle savedInstanceState,
                          @Nullable CreateViewModelCallback createViewModelCallback,
                          @Nullable Bundle arguments) {
+        onCreate(activity, savedInstanceState, createViewModelCallback, arguments, null);
+    }
+
+    /**
+     * Same as {@link #onCreate(Activity, Bundle, CreateViewModelCallback, Bundle)}, but a ViewModel that
+     * is not cached yet is created and initialised on the given executor. Until it is delivered back on the
+     * main thread, {@link #setView(IView)} and {@link #onStart()} are queued and {@link #isViewModelReady()}
+     * returns false.
+     *
+     * @param executor executor used to create the ViewModel, or null to create it synchronously
+     */
+    public void onCreate(@NonNull Activity activity,
+                         @Nullable Bundle savedInstanceState,
+                         @Nullable CreateViewModelCallback createViewModelCallback,
+                         @Nullable Bundle arguments,
+                         @Nullable Executor executor) {
         // no viewmodel for this fragment
         if (createViewModelCallback == null) {
             mViewModel = null;
@@ -48,34 +233,146 @@ public class ViewModelHelper<T extends IView, R extends AbstractViewModel<T>> {
         }
 
         // screen (activity/fragment) created for first time, attach unique ID
+        final long prefetchedScreenId = arguments != null ? arguments.getLong(ARG_LONG_PREFETCHED_SCREEN_IDENTIFIER) : 0;
         if (savedInstanceState == null) {
-            mScreenId = UUID.randomUUID().toString();
+            mScreenId = prefetchedScreenId != 0 ? prefetchedScreenId : nextScreenId();
+        } else if (savedInstanceState.containsKey(STATE_LONG_SCREEN_IDENTIFIER)) {
+            mScreenId = savedInstanceState.getLong(STATE_LONG_SCREEN_IDENTIFIER);
+            mOnSaveInstanceCalled = false;
         } else {
-            mScreenId = savedInstanceState.getString(STATE_STRING_SCREEN_IDENTIFIER);
-            if (null == mScreenId) {
+            // A string identifier can only come from a Bundle written by an older version of the library
+            // before the process was killed. No ViewModel can be cached under it, so a fresh identifier is used.
+            if (null == savedInstanceState.getString(STATE_STRING_SCREEN_IDENTIFIER)) {
                 throw new IllegalStateException("Bundle from onSaveInstanceState() didn't contain screen identifier. " + //NON-NLS
                         "Did you call ViewModelHelper.onSaveInstanceState?"); //NON-NLS
             }
-
+            mScreenId = nextScreenId();
             mOnSaveInstanceCalled = false;
         }
 
+        if (sSavedStateStore != null) {
+            // asks the system, so only done when the store needs it
+            mTaskId = activity.getTaskId();
+        }
+
+        if (mSharedViewModelKey != null) {
+            if (savedInstanceState != null && savedInstanceState.getBoolean(STATE_BOOLEAN_STATE_IN_STORE)) {
+                final FileSavedStateStore savedStateStore = sSavedStateStore;
+                // the marker alone is no state, a snapshot lost with the process is restored as none
+                savedInstanceState = savedStateStore != null ? savedStateStore.read(mTaskId, mScreenId) : null;
+            }
+            // the state is only used if this screen is the first to hold the ViewModel
+            //noinspection unchecked
+            mViewModel = (R) SharedViewModelStore.getInstance().<T>acquire(mSharedViewModelKey, mScreenId, createViewModelCallback);
+            dispatchCreate(mViewModel, arguments, savedInstanceState);
+            return;
+        }
+
         // get model instance for this screen
         final ViewModelProvider viewModelProvider = getViewModelProvider(activity).getViewModelProvider();
         if (null == viewModelProvider) {
             throw new IllegalStateException("ViewModelProvider for activity " + activity + " was null."); //NON-NLS
         }
+        if (prefetchedScreenId == mScreenId) {
+            viewModelProvider.claimPrefetchedViewModel(mScreenId);
+        }
+        mViewModelProvider = viewModelProvider;
+        mCreateViewModelCallback = createViewModelCallback;
+        mArguments = arguments;
+        final Bundle evictedState = viewModelProvider.takeEvictedState(mScreenId);
+        if (evictedState != null) {
+            // the ViewModel was evicted before this screen was recreated, its own state is more recent
+            savedInstanceState = evictedState;
+        } else if (savedInstanceState != null && savedInstanceState.getBoolean(STATE_BOOLEAN_STATE_IN_STORE)) {
+            savedInstanceState = readStoredState(viewModelProvider, savedInstanceState);
+        }
+
+        if (mLazyCreation) {
+            final AbstractViewModel<T> cachedViewModel = viewModelProvider.findViewModel(mScreenId);
+            if (cachedViewModel == null || !cachedViewModel.isCreated()) {
+                mLazyCreatePending = true;
+                mLazyCreateState = savedInstanceState;
+                return;
+            }
+        }
+
+        if (executor != null) {
+            final AbstractViewModel<T> cachedViewModel = viewModelProvider.findViewModel(mScreenId);
+            if (cachedViewModel == null || !cachedViewModel.isCreated()) {
+                createViewModelAsync(viewModelProvider, savedInstanceState, createViewModelCallback, arguments, executor);
+                return;
+            }
+        }
 
-        final ViewModelProvider.ViewModelWrapper<T> viewModelWrapper = viewModelProvider.getViewModel(mScreenId, createViewModelCallback);
         //noinspection unchecked
-        mViewModel = (R) viewModelWrapper.viewModel;
+        mViewModel = (R) viewModelProvider.<T>getViewModel(mScreenId, createViewModelCallback);
 
-        if (viewModelWrapper.wasCreated) {
+        if (dispatchCreate(mViewModel, arguments, savedInstanceState)) {
             // detect that the system has killed the app - saved instance is not null, but the model was recreated
             if (BuildConfig.DEBUG && savedInstanceState != null) {
                 Log.d("model", "Fragment recreated by system - restoring viewmodel"); //NON-NLS
             }
-            mViewModel.onCreate(arguments, savedInstanceState);
+        }
+    }
+
+    private void createViewModelAsync(@NonNull final ViewModelProvider viewModelProvider,
+                                      @Nullable final Bundle savedInstanceState,
+                                      @NonNull final CreateViewModelCallback createViewModelCallback,
+                                      @Nullable final Bundle arguments,
+                                      @NonNull final Executor executor) {
+        mCreatePending = true;
+        final long screenId = mScreenId;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final AbstractViewModel<T> viewModel;
+                try {
+                    viewModel = viewModelProvider.getViewModel(screenId, createViewModelCallback);
+                    dispatchCreate(viewModel, arguments, savedInstanceState);
+                } catch (final RuntimeException ex) {
+                    // rethrow on the main thread, as the synchronous variant would
+                    sMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            throw ex;
+                        }
+                    });
+                    return;
+                }
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        //noinspection unchecked
+                        onViewModelCreated(viewModelProvider, (R) viewModel);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onViewModelCreated(@NonNull final ViewModelProvider viewModelProvider, @NonNull final R viewModel) {
+        mCreatePending = false;
+        mViewModel = viewModel;
+        if (mPendingRemove) {
+            mPendingRemove = false;
+            mPendingView = null;
+            viewModelProvider.remove(mScreenId);
+            dispatchDestroy(viewModel);
+            deleteStoredState();
+            mModelRemoved = true;
+            if (viewModelProvider.recycle(viewModel)) {
+                mViewModel = null;
+            }
+            return;
+        }
+        final T pendingView = mPendingView;
+        mPendingView = null;
+        if (pendingView != null) {
+            dispatchBindView(viewModel, pendingView);
+        }
+        if (mPendingStart) {
+            mPendingStart = false;
+            startViewModel(viewModel);
         }
     }
 
@@ -86,11 +383,20 @@ public class ViewModelHelper<T extends IView, R extends AbstractViewModel<T>> {
      * @param view view
      */
     public void setView(@NonNull final T view) {
+        if (mCreatePending) {
+            mPendingView = view;
+            return;
+        }
+        createLazyViewModel();
         if (mViewModel == null) {
             //no viewmodel for this fragment
             return;
         }
-        mViewModel.onBindView(view);
+        restoreEvictedViewModel();
+        if (mSharedViewModelKey != null) {
+            mSharedBoundView = view;
+        }
+        dispatchBindView(mViewModel, view);
     }
 
     /**
@@ -101,11 +407,12 @@ public class ViewModelHelper<T extends IView, R extends AbstractViewModel<T>> {
      * @param fragment fragment
      */
     public void onDestroyView(@NonNull Fragment fragment) {
-        if (mViewModel == null) {
+        mPendingView = null;
+        if (mViewModel == null && !mCreatePending && !mLazyCreatePending) {
             //no viewmodel for this fragment
             return;
         }
-        mViewModel.clearView();
+        clearView();
         if (fragment.getActivity() != null && fragment.getActivity().isFinishing()) {
             removeViewModel(fragment.getActivity());
         }
@@ -118,7 +425,7 @@ public class ViewModelHelper<T extends IView, R extends AbstractViewModel<T>> {
      * @param fragment fragment
      */
     public void onDestroy(@NonNull final Fragment fragment) {
-        if (mViewModel == null) {
+        if (mViewModel == null && !mCreatePending && !mLazyCreatePending) {
             //no viewmodel for this fragment
             return;
         }
@@ -148,52 +455,87 @@ public class ViewModelHelper<T extends IView, R extends AbstractViewModel<T>> {
      * @param activity activity
      */
     public void onDestroy(@NonNull final Activity activity) {
-        if (mViewModel == null) {
+        mPendingView = null;
+        if (mViewModel == null && !mCreatePending && !mLazyCreatePending) {
             //no viewmodel for this fragment
             return;
         }
-        mViewModel.clearView();
+        clearView();
         if (activity.isFinishing()) {
             removeViewModel(activity);
         }
     }
 
+    private void clearView() {
+        if (mViewModel == null) {
+            return;
+        }
+        if (mSharedViewModelKey != null) {
+            // don't unbind the view of another screen holding the shared ViewModel
+            final boolean boundByThisScreen = mSharedBoundView != null && mViewModel.getView() == mSharedBoundView;
+            mSharedBoundView = null;
+            if (!boundByThisScreen) {
+                return;
+            }
+        }
+        mViewModel.clearView();
+    }
+
     /**
      * Call from {@link android.app.Activity#onStop()} or {@link Fragment#onStop()}
      */
     public void onStop() {
-        if (mViewModel == null) {
+        mStarted = false;
+        mPendingStart = false;
+        if (mViewModel == null || mViewModel.isEvicted()) {
             //no viewmodel for this fragment
             return;
         }
-        mViewModel.onStop();
+        stopViewModel(mViewModel);
     }
 
     /**
      * Call from {@link android.app.Activity#onStart()} ()} or {@link Fragment#onStart()} ()}
      */
     public void onStart() {
+        mStarted = true;
+        if (mCreatePending) {
+            mPendingStart = true;
+            return;
+        }
         if (mViewModel == null) {
             //no viewmodel for this fragment
             return;
         }
-        mViewModel.onStart();
+        restoreEvictedViewModel();
+        startViewModel(mViewModel);
     }
 
 
+    /**
+     * @return false while the ViewModel is still being created on a background executor, see
+     * {@link #onCreate(Activity, Bundle, CreateViewModelCallback, Bundle, Executor)}.
+     */
+    public boolean isViewModelReady() {
+        return mViewModel != null || mLazyCreatePending;
+    }
+
     /**
      * Returns the current ViewModel instance associated with the Fragment or Activity.
      * Throws an {@link IllegalStateException} in case the ViewModel is null. This can happen
      * if you call this method too soon - before {@link Activity#onCreate(Bundle)} or {@link Fragment#onCreate(Bundle)}
-     * or this {@link ViewModelHelper} is not properly setup.
+     * or this {@link ViewModelHelper} is not properly setup. It also happens while the ViewModel is still being
+     * created on a background executor, check {@link #isViewModelReady()} in that case.
      *
      * @return {@link R}
      */
     @NonNull
     public R getViewModel() {
+        createLazyViewModel();
         if (null == mViewModel) {
             throw new IllegalStateException("ViewModel is not ready. Are you calling this method before Activity/Fragment onCreate?"); //NON-NLS
         }
+        restoreEvictedViewModel();
         return mViewModel;
     }
 
@@ -205,27 +547,231 @@ public class ViewModelHelper<T extends IView, R extends AbstractViewModel<T>> {
      * @param bundle bundle
      */
     public void onSaveInstanceState(@NonNull Bundle bundle) {
-        bundle.putString(STATE_STRING_SCREEN_IDENTIFIER, mScreenId);
+        bundle.putLong(STATE_LONG_SCREEN_IDENTIFIER, mScreenId);
         if (mViewModel != null) {
-            mViewModel.onSaveInstanceState(bundle);
+            final FileSavedStateStore savedStateStore = sSavedStateStore;
+            final SavedStateMonitor savedStateMonitor = sSavedStateMonitor;
+            final boolean measure = savedStateMonitor != null && savedStateMonitor.shouldSample();
+            final Bundle viewModelState = savedStateStore != null || measure ? new Bundle() : bundle;
+            final long startTime = measure ? System.nanoTime() : 0;
+            final Bundle evictedState = mViewModel.isEvicted() && mViewModelProvider != null
+                    ? mViewModelProvider.peekEvictedState(mScreenId) : null;
+            if (evictedState != null) {
+                viewModelState.putAll(evictedState);
+            } else {
+                final LifecycleTracer tracer = sLifecycleTracer;
+                final long traceStartTime = tracer != null ? tracer.begin(mViewModel, LifecycleTracer.EVENT_ON_SAVE_INSTANCE_STATE) : 0;
+                mViewModel.onSaveInstanceState(viewModelState);
+                if (tracer != null) {
+                    tracer.end(mViewModel, LifecycleTracer.EVENT_ON_SAVE_INSTANCE_STATE, traceStartTime);
+                }
+            }
+            final long duration = measure ? System.nanoTime() - startTime : 0;
+            final int stateSize;
+            final int storedSize = savedStateStore != null ? savedStateStore.write(mTaskId, mScreenId, viewModelState) : -1;
+            if (storedSize >= 0) {
+                stateSize = storedSize;
+                bundle.putBoolean(STATE_BOOLEAN_STATE_IN_STORE, true);
+            } else if (viewModelState != bundle) {
+                // measured, or the store failed to write it
+                stateSize = measure ? SavedStateMonitor.sizeOf(viewModelState) : 0;
+                bundle.putAll(viewModelState);
+            } else {
+                stateSize = 0;
+            }
+            if (measure) {
+                savedStateMonitor.onStateSaved(mViewModel.getClass(), stateSize, duration);
+            }
+            mOnSaveInstanceCalled = true;
+        } else if (mLazyCreatePending) {
+            // keep the state for the ViewModel that was never created
+            if (mLazyCreateState != null) {
+                final FileSavedStateStore savedStateStore = sSavedStateStore;
+                if (savedStateStore != null && savedStateStore.write(mTaskId, mScreenId, mLazyCreateState) >= 0) {
+                    bundle.putBoolean(STATE_BOOLEAN_STATE_IN_STORE, true);
+                } else {
+                    bundle.putAll(mLazyCreateState);
+                }
+            }
+            mOnSaveInstanceCalled = true;
+        } else if (mCreatePending) {
             mOnSaveInstanceCalled = true;
         }
     }
 
+    /**
+     * @return the state the ViewModel saved into the {@link FileSavedStateStore}, read only if the
+     * ViewModel has to be created again, or null if it was lost with the process before it was written
+     */
+    @Nullable
+    private Bundle readStoredState(@NonNull final ViewModelProvider viewModelProvider, @NonNull final Bundle savedInstanceState) {
+        final AbstractViewModel<T> cachedViewModel = viewModelProvider.findViewModel(mScreenId);
+        if (cachedViewModel != null && cachedViewModel.isCreated()) {
+            return savedInstanceState;
+        }
+        final FileSavedStateStore savedStateStore = sSavedStateStore;
+        if (savedStateStore == null) {
+            Log.e("model", "ViewModel state was saved to a FileSavedStateStore, but none is installed"); //NON-NLS
+            return null;
+        }
+        return savedStateStore.read(mTaskId, mScreenId);
+    }
+
+    private static boolean dispatchCreate(@NonNull final AbstractViewModel<?> viewModel,
+                                          @Nullable final Bundle arguments,
+                                          @Nullable final Bundle savedInstanceState) {
+        final LifecycleTracer tracer = viewModel.isCreated() ? null : sLifecycleTracer;
+        final long startTime = tracer != null ? tracer.begin(viewModel, LifecycleTracer.EVENT_ON_CREATE) : 0;
+        final boolean created = viewModel.performCreate(arguments, savedInstanceState);
+        if (tracer != null) {
+            tracer.end(viewModel, LifecycleTracer.EVENT_ON_CREATE, startTime);
+        }
+        return created;
+    }
+
+    private void dispatchBindView(@NonNull final R viewModel, @NonNull final T view) {
+        final LifecycleTracer tracer = sLifecycleTracer;
+        final long startTime = tracer != null ? tracer.begin(viewModel, LifecycleTracer.EVENT_ON_BIND_VIEW) : 0;
+        viewModel.onBindView(view);
+        viewModel.replayViewCommands();
+        if (tracer != null) {
+            tracer.end(viewModel, LifecycleTracer.EVENT_ON_BIND_VIEW, startTime);
+        }
+    }
+
+    /**
+     * A shared ViewModel is started by the first of its holders to start and stopped by the last one to stop.
+     */
+    private void startViewModel(@NonNull final AbstractViewModel<?> viewModel) {
+        if (mSharedViewModelKey != null && !SharedViewModelStore.getInstance().start(mSharedViewModelKey, mScreenId)) {
+            return;
+        }
+        dispatchStart(viewModel);
+    }
+
+    private void stopViewModel(@NonNull final AbstractViewModel<?> viewModel) {
+        if (mSharedViewModelKey != null && !SharedViewModelStore.getInstance().stop(mSharedViewModelKey, mScreenId)) {
+            return;
+        }
+        dispatchStop(viewModel);
+    }
+
+    private static void dispatchStart(@NonNull final AbstractViewModel<?> viewModel) {
+        final LifecycleTracer tracer = sLifecycleTracer;
+        final long startTime = tracer != null ? tracer.begin(viewModel, LifecycleTracer.EVENT_ON_START) : 0;
+        viewModel.onStart();
+        if (tracer != null) {
+            tracer.end(viewModel, LifecycleTracer.EVENT_ON_START, startTime);
+        }
+    }
+
+    private static void dispatchStop(@NonNull final AbstractViewModel<?> viewModel) {
+        final LifecycleTracer tracer = sLifecycleTracer;
+        final long startTime = tracer != null ? tracer.begin(viewModel, LifecycleTracer.EVENT_ON_STOP) : 0;
+        viewModel.onStop();
+        if (tracer != null) {
+            tracer.end(viewModel, LifecycleTracer.EVENT_ON_STOP, startTime);
+        }
+    }
+
+    private static void dispatchDestroy(@NonNull final AbstractViewModel<?> viewModel) {
+        // performDestroy() does nothing for an instance destroyed before, for example by an eviction
+        final LifecycleTracer tracer = viewModel.isCreated() && !viewModel.isDestroyed() ? sLifecycleTracer : null;
+        final long startTime = tracer != null ? tracer.begin(viewModel, LifecycleTracer.EVENT_ON_DESTROY) : 0;
+        viewModel.performDestroy();
+        if (tracer != null) {
+            tracer.end(viewModel, LifecycleTracer.EVENT_ON_DESTROY, startTime);
+        }
+    }
+
+    private void deleteStoredState() {
+        final FileSavedStateStore savedStateStore = sSavedStateStore;
+        if (savedStateStore != null) {
+            savedStateStore.delete(mTaskId, mScreenId);
+        }
+    }
+
+    private void createLazyViewModel() {
+        if (!mLazyCreatePending || mViewModelProvider == null || mCreateViewModelCallback == null) {
+            return;
+        }
+        mLazyCreatePending = false;
+        final Bundle savedInstanceState = mLazyCreateState;
+        mLazyCreateState = null;
+        //noinspection unchecked
+        mViewModel = (R) mViewModelProvider.<T>getViewModel(mScreenId, mCreateViewModelCallback);
+        dispatchCreate(mViewModel, mArguments, savedInstanceState);
+        if (mStarted) {
+            startViewModel(mViewModel);
+        }
+    }
+
+    private void restoreEvictedViewModel() {
+        if (mViewModel == null || !mViewModel.isEvicted() || mModelRemoved
+                || mViewModelProvider == null || mCreateViewModelCallback == null) {
+            return;
+        }
+        final Bundle evictedState = mViewModelProvider.takeEvictedState(mScreenId);
+        final R evictedViewModel = mViewModel;
+        //noinspection unchecked
+        mViewModel = (R) mViewModelProvider.<T>getViewModel(mScreenId, mCreateViewModelCallback);
+        dispatchCreate(mViewModel, mArguments, evictedState);
+        // not watched when it was destroyed, this screen held on to it until now
+        evictedViewModel.watchForLeak();
+    }
+
     private void removeViewModel(@NonNull final Activity activity) {
-        if (mViewModel != null && !mModelRemoved) {
-            final ViewModelProvider viewModelProvider = getViewModelProvider(activity).getViewModelProvider();
+        if (mViewModelProvider != null && !mModelRemoved) {
+            // ViewModels of nested screens can't outlive this one
+            mViewModelProvider.removeChildScope(mScreenId);
+        }
+        if (mCreatePending) {
+            // removed once the ViewModel is delivered
+            mPendingRemove = true;
+            return;
+        }
+        if (mLazyCreatePending) {
+            // the ViewModel was never created
+            mLazyCreatePending = false;
+            mLazyCreateState = null;
+            deleteStoredState();
+            mModelRemoved = true;
+            return;
+        }
+        if (mViewModel != null && !mModelRemoved && mSharedViewModelKey != null) {
+            clearView();
+            final AbstractViewModel<? extends IView> released = SharedViewModelStore.getInstance().release(mSharedViewModelKey, mScreenId);
+            if (released != null) {
+                dispatchDestroy(released);
+            }
+            deleteStoredState();
+            mModelRemoved = true;
+        } else if (mViewModel != null && !mModelRemoved) {
+            // the scope the ViewModel was created in, a parent screen may already be gone
+            final ViewModelProvider viewModelProvider = mViewModelProvider != null
+                    ? mViewModelProvider : getViewModelProvider(activity).getViewModelProvider();
             if (null == viewModelProvider) {
                 throw new IllegalStateException("ViewModelProvider for activity " + activity + " was null."); //NON-NLS
             }
             viewModelProvider.remove(mScreenId);
-            mViewModel.onDestroy();
+            dispatchDestroy(mViewModel);
+            deleteStoredState();
             mModelRemoved = true;
+            if (mViewModel.isEvicted()) {
+                // removed before a view was bound again, not watched when the eviction destroyed it
+                mViewModel.watchForLeak();
+            } else if (viewModelProvider.recycle(mViewModel)) {
+                // owned by the recycle pool now
+                mViewModel = null;
+            }
         }
     }
 
     @NonNull
     private IViewModelProvider getViewModelProvider(@NonNull Activity activity) {
+        if (mParentScope != null && mParentScope.getViewModelProvider() != null) {
+            return mParentScope;
+        }
         if (!(activity instanceof IViewModelProvider)) {
             throw new IllegalStateException("Your activity must implement IViewModelProvider"); //NON-NLS
         }
@@ -0,0 +1,218 @@
+package eu.inloop.viewmodel;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Watches destroyed ViewModels through weak references and reports those that are still reachable after a timeout,
+ * for example because a view, a listener or a background thread keeps them alive. Install with
+ * {@link ViewModelHelper#setLeakWatcher(ViewModelLeakWatcher)}.
+ * <p>
+ * In debug builds enable {@link #setForceGc(boolean)} for reliable reports. In production use
+ * {@link #setSampleRate(int)} to watch only every n-th ViewModel; without a forced GC a report only means that
+ * no collection happened to free the ViewModel within the timeout.
+ */
+public class ViewModelLeakWatcher {
+
+    private static final String TAG = "ViewModelLeakWatcher"; //NON-NLS
+
+    private static final long DEFAULT_RETAIN_TIMEOUT_MILLIS = 10 * 1000;
+
+    public interface Listener {
+
+        /**
+         * Called on the main thread for a ViewModel that was not garbage collected within the timeout after its
+         * {@link AbstractViewModel#onDestroy()}.
+         *
+         * @param viewModelClass       class of the ViewModel
+         * @param viewStillBound       true if the ViewModel still references a view, which is then leaked as well
+         * @param estimatedRetainedSize {@link AbstractViewModel#getEstimatedMemorySize()} of the ViewModel
+         * @param retainedMillis       time since the ViewModel was destroyed
+         */
+        void onViewModelRetained(@NonNull Class<?> viewModelClass, boolean viewStillBound,
+                                 long estimatedRetainedSize, long retainedMillis);
+    }
+
+    private static final class WatchedReference extends WeakReference<AbstractViewModel<?>> {
+        @NonNull
+        final Class<?> mViewModelClass;
+        final long mDestroyTime;
+
+        WatchedReference(@NonNull final AbstractViewModel<?> viewModel, @NonNull final ReferenceQueue<AbstractViewModel<?>> queue) {
+            super(viewModel, queue);
+            mViewModelClass = viewModel.getClass();
+            mDestroyTime = SystemClock.uptimeMillis();
+        }
+    }
+
+    @Nullable
+    private final Listener mListener;
+    @NonNull
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    @NonNull
+    private final AtomicInteger mWatchCounter = new AtomicInteger();
+    @NonNull
+    private final ReferenceQueue<AbstractViewModel<?>> mQueue = new ReferenceQueue<>();
+
+    @NonNull
+    private final Object mLock = new Object();
+    // guarded by mLock
+    @NonNull
+    private final HashSet<WatchedReference> mWatched = new HashSet<>();
+    @NonNull
+    private final HashMap<Class<?>, Long> mRetainedSizes = new HashMap<>();
+
+    private volatile int mSampleRate = 1;
+    private volatile long mRetainTimeoutMillis = DEFAULT_RETAIN_TIMEOUT_MILLIS;
+    private volatile boolean mForceGc;
+
+    @NonNull
+    private final Runnable mCheckRunnable = new Runnable() {
+        @Override
+        public void run() {
+            check();
+        }
+    };
+
+    /**
+     * @param listener receives the reports, may be null to only log them
+     */
+    public ViewModelLeakWatcher(@Nullable final Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @param sampleRate watch one of every sampleRate destroyed ViewModels, 1 watches all of them
+     */
+    public void setSampleRate(final int sampleRate) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("Sample rate must be at least 1"); //NON-NLS
+        }
+        mSampleRate = sampleRate;
+    }
+
+    /**
+     * @param retainTimeoutMillis time a destroyed ViewModel may stay reachable, 10 seconds by default
+     */
+    public void setRetainTimeout(final long retainTimeoutMillis) {
+        mRetainTimeoutMillis = retainTimeoutMillis;
+    }
+
+    /**
+     * @param forceGc run the garbage collector on the main thread before each check, for debug builds only
+     */
+    public void setForceGc(final boolean forceGc) {
+        mForceGc = forceGc;
+    }
+
+    /**
+     * @return sum of {@link AbstractViewModel#getEstimatedMemorySize()} of all reported ViewModels by class
+     */
+    @NonNull
+    public Map<Class<?>, Long> getRetainedSizes() {
+        synchronized (mLock) {
+            return new HashMap<>(mRetainedSizes);
+        }
+    }
+
+    /**
+     * @return number of destroyed ViewModels that are watched and not collected yet
+     */
+    public int getWatchedCount() {
+        drainQueue();
+        synchronized (mLock) {
+            return mWatched.size();
+        }
+    }
+
+    void watch(@NonNull final AbstractViewModel<?> viewModel) {
+        if (mWatchCounter.getAndIncrement() % mSampleRate != 0) {
+            return;
+        }
+        synchronized (mLock) {
+            mWatched.add(new WatchedReference(viewModel, mQueue));
+        }
+        mMainHandler.postDelayed(mCheckRunnable, mRetainTimeoutMillis);
+    }
+
+    /**
+     * Stops watching a ViewModel that is kept on purpose, see {@link RecyclableViewModel}.
+     */
+    void unwatch(@NonNull final AbstractViewModel<?> viewModel) {
+        synchronized (mLock) {
+            for (final Iterator<WatchedReference> iterator = mWatched.iterator(); iterator.hasNext(); ) {
+                if (iterator.next().get() == viewModel) {
+                    iterator.remove();
+                    return;
+                }
+            }
+        }
+    }
+
+    @MainThread
+    private void check() {
+        if (mForceGc) {
+            Runtime.getRuntime().gc();
+            System.runFinalization();
+        }
+        drainQueue();
+        final long now = SystemClock.uptimeMillis();
+        final long timeout = mRetainTimeoutMillis;
+        final ArrayList<WatchedReference> retained = new ArrayList<>();
+        synchronized (mLock) {
+            for (final WatchedReference reference : mWatched) {
+                if (now - reference.mDestroyTime >= timeout) {
+                    retained.add(reference);
+                }
+            }
+            // every ViewModel is reported once
+            mWatched.removeAll(retained);
+        }
+        for (final WatchedReference reference : retained) {
+            final AbstractViewModel<?> viewModel = reference.get();
+            if (viewModel == null) {
+                continue;
+            }
+            report(reference, viewModel, now);
+        }
+    }
+
+    private void report(@NonNull final WatchedReference reference, @NonNull final AbstractViewModel<?> viewModel, final long now) {
+        final boolean viewStillBound = viewModel.getView() != null;
+        final long estimatedSize = viewModel.getEstimatedMemorySize();
+        final long retainedMillis = now - reference.mDestroyTime;
+        synchronized (mLock) {
+            final Long retainedSize = mRetainedSizes.get(reference.mViewModelClass);
+            mRetainedSizes.put(reference.mViewModelClass, (retainedSize != null ? retainedSize : 0) + estimatedSize);
+        }
+        Log.w(TAG, reference.mViewModelClass.getName() + " was not collected " + retainedMillis //NON-NLS
+                + "ms after onDestroy()" + (viewStillBound ? ", its view is still bound" : "")); //NON-NLS
+        if (mListener != null) {
+            mListener.onViewModelRetained(reference.mViewModelClass, viewStillBound, estimatedSize, retainedMillis);
+        }
+    }
+
+    private void drainQueue() {
+        synchronized (mLock) {
+            WatchedReference reference;
+            while ((reference = (WatchedReference) mQueue.poll()) != null) {
+                mWatched.remove(reference);
+            }
+        }
+    }
+}
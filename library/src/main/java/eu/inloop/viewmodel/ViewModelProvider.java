@@ -1,11 +1,21 @@
 package eu.inloop.viewmodel;
 
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.os.Bundle;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Executor;
 
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.collection.LongSparseArray;
 import androidx.fragment.app.FragmentActivity;
 import eu.inloop.viewmodel.base.CreateViewModelCallback;
 
@@ -14,11 +24,105 @@ import eu.inloop.viewmodel.base.CreateViewModelCallback;
  * in {@link FragmentActivity#onRetainCustomNonConfigurationInstance()
  * and restore in {@link FragmentActivity#onCreate(android.os.Bundle)} before
  * calling the super implemenentation.
+ * <p>
+ * Nested screens (for example child fragments) keep their ViewModels in a child scope of the provider, see
+ * {@link #getChildScope(long)}. Lookups resolve up the chain of parent scopes, removing a scope frees the
+ * ViewModels of its whole subtree.
  */
 public class ViewModelProvider {
 
+    /**
+     * Copy-on-write map of screen identifiers to ViewModels. Cache hits only read the volatile
+     * reference and never lock. Writes are rare (a screen is created or removed), they copy the
+     * map under {@link #mCreateLock} so each identifier gets at most one instance. A write is O(n) in the
+     * number of ViewModels of this scope, which is cheap for the screens an activity keeps but makes
+     * creating and removing thousands of screens while thousands are cached quadratic.
+     * <p>
+     * A published map is never modified again, see {@link #publishCache(LongSparseArray)}.
+     */
     @NonNull
-    private final HashMap<String, AbstractViewModel<? extends IView>> mViewModelCache;
+    private volatile LongSparseArray<AbstractViewModel<? extends IView>> mViewModelCache;
+
+    @NonNull
+    private final Object mCreateLock = new Object();
+
+    /**
+     * ViewModels being created by {@link #getViewModel(long, CreateViewModelCallback)}, by screen identifier.
+     * The callback runs outside of {@link #mCreateLock}, other requests for the same identifier wait for it.
+     * Guarded by {@link #mCreateLock}.
+     */
+    @NonNull
+    private final LongSparseArray<PendingCreation> mPendingCreations = new LongSparseArray<>(0);
+
+    /**
+     * Batches the main thread updates of all ViewModels of this provider, see {@link AbstractViewModel#runOnMainThread(Runnable)}.
+     */
+    @NonNull
+    private final MainThreadDispatcher mMainThreadDispatcher;
+
+    @Nullable
+    private final ViewModelProvider mParentScope;
+
+    /**
+     * Child scopes by the screen identifier of the screen owning them. Guarded by {@link #mCreateLock}.
+     */
+    @NonNull
+    private final LongSparseArray<ViewModelProvider> mChildScopes = new LongSparseArray<>(0);
+
+    /**
+     * Identifiers of prefetched ViewModels that no screen has claimed yet, oldest first.
+     * Guarded by {@link #mCreateLock}.
+     */
+    @NonNull
+    private final LinkedHashSet<Long> mPrefetchedIds = new LinkedHashSet<>();
+
+    private int mPrefetchLimit = DEFAULT_PREFETCH_LIMIT;
+
+    private static final int DEFAULT_PREFETCH_LIMIT = 4;
+
+    /**
+     * State saved by ViewModels evicted in {@link #onTrimMemory(int)}, by screen identifier.
+     * Guarded by {@link #mEvictedStatesLock}, which may be taken while holding {@link #mCreateLock} but not the other way
+     * round, so the lookup done by every screen in onCreate doesn't contend with ViewModel creation.
+     */
+    @NonNull
+    private final LongSparseArray<Bundle> mEvictedStates = new LongSparseArray<>();
+
+    @NonNull
+    private final Object mEvictedStatesLock = new Object();
+
+    // size of mEvictedStates, read without the lock to skip the lookup while nothing is evicted
+    private volatile int mEvictedStateCount;
+
+    // used by the root scope only, child scopes read it from there so later changes reach them
+    private long mMemoryBudget = Runtime.getRuntime().maxMemory() / 8;
+
+    /**
+     * Destroyed {@link RecyclableViewModel}s by class, kept by the root scope only. Guarded by {@link #mRecyclePoolLock}.
+     */
+    @NonNull
+    private final HashMap<Class<?>, ArrayList<AbstractViewModel<? extends IView>>> mRecyclePool = new HashMap<>(0);
+
+    /**
+     * Guards the recycle pool and its size. Never taken while holding the {@link #mCreateLock} of any scope, so a
+     * child scope recycling into the pool of the root can't deadlock with the root locking its children.
+     */
+    @NonNull
+    private final Object mRecyclePoolLock = new Object();
+
+    private int mRecyclePoolSize = DEFAULT_RECYCLE_POOL_SIZE;
+
+    private static final int DEFAULT_RECYCLE_POOL_SIZE = 3;
+
+    @NonNull
+    private static final Comparator<AbstractViewModel<? extends IView>> LEAST_RECENTLY_BOUND = new Comparator<AbstractViewModel<? extends IView>>() {
+        @Override
+        public int compare(AbstractViewModel<? extends IView> first, AbstractViewModel<? extends IView> second) {
+            final long firstTime = first.getViewClearedTime();
+            final long secondTime = second.getViewClearedTime();
+            return firstTime < secondTime ? -1 : (firstTime == secondTime ? 0 : 1);
+        }
+    };
 
     @NonNull
     public static ViewModelProvider newInstance(@NonNull final FragmentActivity activity) {
@@ -41,44 +145,616 @@ public class ViewModelProvider {
     }
 
     private ViewModelProvider() {
-        mViewModelCache = new HashMap<>();
+        this(null);
     }
 
-    public synchronized void remove(@Nullable String modeIdentifier) {
-        mViewModelCache.remove(modeIdentifier);
+    private ViewModelProvider(@Nullable final ViewModelProvider parentScope) {
+        mViewModelCache = new LongSparseArray<>();
+        mParentScope = parentScope;
+        if (parentScope != null) {
+            // the whole hierarchy belongs to one activity and shares its batches
+            mMainThreadDispatcher = parentScope.mMainThreadDispatcher;
+        } else {
+            mMainThreadDispatcher = new MainThreadDispatcher(ChoreographerFrameScheduler.getInstance());
+        }
     }
 
-    public synchronized void removeAllViewModels() {
-        mViewModelCache.clear();
+    /**
+     * Returns the scope for the ViewModels of screens nested in the given screen, creating it if needed.
+     *
+     * @param screenId identifier of the parent screen
+     */
+    @NonNull
+    public ViewModelProvider getChildScope(final long screenId) {
+        synchronized (mCreateLock) {
+            ViewModelProvider childScope = mChildScopes.get(screenId);
+            if (childScope == null) {
+                childScope = new ViewModelProvider(this);
+                mChildScopes.put(screenId, childScope);
+            }
+            return childScope;
+        }
+    }
+
+    /**
+     * Removes the child scope of the screen and all ViewModels in its subtree, see {@link #removeAllViewModels()}.
+     *
+     * @param screenId identifier of the parent screen
+     */
+    public void removeChildScope(final long screenId) {
+        final ViewModelProvider childScope;
+        synchronized (mCreateLock) {
+            childScope = mChildScopes.get(screenId);
+            mChildScopes.remove(screenId);
+        }
+        if (childScope != null) {
+            childScope.removeAllViewModels();
+        }
+    }
+
+    /**
+     * @return the scope this one is nested in, or null for the scope of an activity
+     */
+    @Nullable
+    public ViewModelProvider getParentScope() {
+        return mParentScope;
+    }
+
+    /**
+     * Number of live ViewModels, can be sampled to detect ViewModels that are never removed.
+     *
+     * @return ViewModels cached in this scope and its child scopes, including prefetched and not yet claimed ones
+     */
+    public int getViewModelCount() {
+        final LongSparseArray<ViewModelProvider> childScopes;
+        int count;
+        synchronized (mCreateLock) {
+            childScopes = mChildScopes.clone();
+            count = mViewModelCache.size();
+        }
+        for (int i = 0; i < childScopes.size(); i++) {
+            count += childScopes.valueAt(i).getViewModelCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return sum of {@link AbstractViewModel#getEstimatedMemorySize()} of the ViewModels in this scope and its child scopes
+     */
+    public long getEstimatedMemorySize() {
+        final LongSparseArray<ViewModelProvider> childScopes;
+        final LongSparseArray<AbstractViewModel<? extends IView>> cache;
+        synchronized (mCreateLock) {
+            childScopes = mChildScopes.clone();
+            // published maps are compacted and never modified again, so they can be read after the lock is released
+            cache = mViewModelCache;
+        }
+        long size = 0;
+        for (int i = 0; i < cache.size(); i++) {
+            size += cache.valueAt(i).getEstimatedMemorySize();
+        }
+        for (int i = 0; i < childScopes.size(); i++) {
+            size += childScopes.valueAt(i).getEstimatedMemorySize();
+        }
+        return size;
+    }
+
+    /**
+     * @return destroyed ViewModels waiting in the recycle pool, see {@link RecyclableViewModel}
+     */
+    public int getRecycledViewModelCount() {
+        final ViewModelProvider rootScope = getRootScope();
+        synchronized (rootScope.mRecyclePoolLock) {
+            int count = 0;
+            for (final ArrayList<AbstractViewModel<? extends IView>> pool : rootScope.mRecyclePool.values()) {
+                count += pool.size();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Removes the ViewModel from the cache. A ViewModel of this identifier that is being created right now is
+     * not cached once created.
+     */
+    public void remove(final long modelIdentifier) {
+        synchronized (mCreateLock) {
+            removeEvictedState(modelIdentifier);
+            final PendingCreation pendingCreation = mPendingCreations.get(modelIdentifier);
+            if (pendingCreation != null) {
+                pendingCreation.mRemoved = true;
+                mPendingCreations.remove(modelIdentifier);
+            }
+            if (mViewModelCache.indexOfKey(modelIdentifier) < 0) {
+                return;
+            }
+            final LongSparseArray<AbstractViewModel<? extends IView>> cache = mViewModelCache.clone();
+            cache.remove(modelIdentifier);
+            publishCache(cache);
+        }
+    }
+
+    /**
+     * LongSparseArray only marks removed entries and compacts its arrays in place on the next size(),
+     * valueAt() or indexOfKey() call, which would race with the lock-free readers of the published map.
+     * The copy is therefore compacted before it becomes visible. Call with {@link #mCreateLock} held.
+     */
+    private void publishCache(@NonNull final LongSparseArray<AbstractViewModel<? extends IView>> cache) {
+        cache.size();
+        mViewModelCache = cache;
+    }
+
+    /**
+     * Removes all ViewModels, including those of child scopes, and calls {@link AbstractViewModel#onDestroy()}
+     * on those not destroyed yet.
+     */
+    public void removeAllViewModels() {
+        final LongSparseArray<AbstractViewModel<? extends IView>> removed;
+        final LongSparseArray<ViewModelProvider> childScopes;
+        synchronized (mCreateLock) {
+            removed = mViewModelCache;
+            mViewModelCache = new LongSparseArray<>();
+            mPrefetchedIds.clear();
+            synchronized (mEvictedStatesLock) {
+                mEvictedStates.clear();
+                mEvictedStateCount = 0;
+            }
+            for (int i = 0; i < mPendingCreations.size(); i++) {
+                mPendingCreations.valueAt(i).mRemoved = true;
+            }
+            mPendingCreations.clear();
+            childScopes = mChildScopes.clone();
+            mChildScopes.clear();
+        }
+        synchronized (mRecyclePoolLock) {
+            mRecyclePool.clear();
+        }
+        for (int i = 0; i < childScopes.size(); i++) {
+            childScopes.valueAt(i).removeAllViewModels();
+        }
+        for (int i = 0; i < removed.size(); i++) {
+            removed.valueAt(i).performDestroy();
+        }
+    }
+
+    /**
+     * Sets the estimated amount of memory ViewModels may retain, see {@link AbstractViewModel#getEstimatedMemorySize()}.
+     * Defaults to 1/8 of the maximum heap size. The budget is shared by the whole hierarchy of scopes.
+     *
+     * @param memoryBudget budget in bytes
+     */
+    public void setMemoryBudget(final long memoryBudget) {
+        getRootScope().mMemoryBudget = memoryBudget;
+    }
+
+    /**
+     * Call from {@link ComponentCallbacks2#onTrimMemory(int)} of the Activity. Evicts ViewModels whose view is
+     * currently cleared (for example Fragments in the back stack), least recently bound first, until the
+     * estimated size of all ViewModels fits the budget. The budget is halved for {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW}
+     * and {@link ComponentCallbacks2#TRIM_MEMORY_BACKGROUND}, all such ViewModels are evicted for
+     * {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL} and {@link ComponentCallbacks2#TRIM_MEMORY_MODERATE} or higher.
+     * <p>
+     * An evicted ViewModel saves its state with {@link AbstractViewModel#onSaveInstanceState(Bundle)} and is destroyed.
+     * Once its screen binds a view again, a new instance is created and receives that state in
+     * {@link AbstractViewModel#onCreate(Bundle, Bundle)}.
+     *
+     * @param level trim memory level
+     */
+    public void onTrimMemory(final int level) {
+        final long memoryBudget = getRootScope().mMemoryBudget;
+        final long budget;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            budget = 0;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            budget = memoryBudget / 2;
+        } else {
+            budget = memoryBudget;
+        }
+        final ArrayList<AbstractViewModel<? extends IView>> prefetched;
+        synchronized (mCreateLock) {
+            // nobody is waiting for these yet
+            prefetched = trimPrefetched(0);
+        }
+        destroyPrefetched(prefetched);
+
+        final LongSparseArray<AbstractViewModel<? extends IView>> cache = mViewModelCache;
+        final ArrayList<AbstractViewModel<? extends IView>> detached = new ArrayList<>();
+        long totalSize = 0;
+        for (int i = 0; i < cache.size(); i++) {
+            final AbstractViewModel<? extends IView> viewModel = cache.valueAt(i);
+            totalSize += viewModel.getEstimatedMemorySize();
+            if (viewModel.getView() == null && viewModel.isCreated()) {
+                detached.add(viewModel);
+            }
+        }
+        Collections.sort(detached, LEAST_RECENTLY_BOUND);
+        for (final AbstractViewModel<? extends IView> viewModel : detached) {
+            if (budget > 0 && totalSize <= budget) {
+                break;
+            }
+            totalSize -= viewModel.getEstimatedMemorySize();
+            evict(viewModel);
+        }
+
+        final LongSparseArray<ViewModelProvider> childScopes;
+        synchronized (mCreateLock) {
+            childScopes = mChildScopes.clone();
+        }
+        for (int i = 0; i < childScopes.size(); i++) {
+            childScopes.valueAt(i).onTrimMemory(level);
+        }
+    }
+
+    @Nullable
+    Bundle takeEvictedState(final long modelIdentifier) {
+        if (mEvictedStateCount == 0) {
+            return null;
+        }
+        synchronized (mEvictedStatesLock) {
+            final Bundle state = mEvictedStates.get(modelIdentifier);
+            if (state != null) {
+                removeEvictedState(modelIdentifier);
+            }
+            return state;
+        }
+    }
+
+    @Nullable
+    Bundle peekEvictedState(final long modelIdentifier) {
+        if (mEvictedStateCount == 0) {
+            return null;
+        }
+        synchronized (mEvictedStatesLock) {
+            return mEvictedStates.get(modelIdentifier);
+        }
+    }
+
+    private void removeEvictedState(final long modelIdentifier) {
+        if (mEvictedStateCount == 0) {
+            return;
+        }
+        synchronized (mEvictedStatesLock) {
+            mEvictedStates.remove(modelIdentifier);
+            mEvictedStateCount = mEvictedStates.size();
+        }
+    }
+
+    private void evict(@NonNull final AbstractViewModel<? extends IView> viewModel) {
+        final long modelIdentifier = viewModel.getUniqueId();
+        final Bundle state = new Bundle();
+        viewModel.onSaveInstanceState(state);
+        synchronized (mCreateLock) {
+            if (findViewModel(modelIdentifier) != viewModel) {
+                return;
+            }
+            remove(modelIdentifier);
+            synchronized (mEvictedStatesLock) {
+                mEvictedStates.put(modelIdentifier, state);
+                mEvictedStateCount = mEvictedStates.size();
+            }
+        }
+        viewModel.markEvicted();
+        viewModel.performDestroy();
+    }
+
+    /**
+     * Creates a ViewModel ahead of time and runs its {@link AbstractViewModel#onCreate(Bundle, Bundle)}
+     * on the executor, for example for the pages next to the current one in a ViewPager.
+     * Pass the returned identifier to the screen with {@link ViewModelHelper#putPrefetchedScreenId(Bundle, long)},
+     * the screen then adopts the warm instance. Each identifier can be adopted by one screen only.
+     * <p>
+     * At most {@link #setPrefetchLimit(int)} prefetched ViewModels are kept until claimed, the oldest one is
+     * destroyed when the limit is exceeded.
+     *
+     * @param createViewModelCallback callback for creating the viewmodel
+     * @param arguments               arguments the screen will be created with
+     * @param executor                executor to create and initialise the ViewModel on
+     * @return screen identifier of the prefetched ViewModel
+     */
+    public long prefetchViewModel(@NonNull final CreateViewModelCallback createViewModelCallback,
+                                  @Nullable final Bundle arguments,
+                                  @NonNull final Executor executor) {
+        final long screenId = ViewModelHelper.nextScreenId();
+        final ArrayList<AbstractViewModel<? extends IView>> trimmed;
+        synchronized (mCreateLock) {
+            mPrefetchedIds.add(screenId);
+            trimmed = trimPrefetched(mPrefetchLimit);
+        }
+        destroyPrefetched(trimmed);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mCreateLock) {
+                    if (!mPrefetchedIds.contains(screenId)) {
+                        // already claimed or evicted
+                        return;
+                    }
+                }
+                final AbstractViewModel<IView> viewModel = getViewModel(screenId, createViewModelCallback);
+                if (findViewModel(screenId) != viewModel) {
+                    // evicted while the ViewModel was being created
+                    return;
+                }
+                viewModel.performCreate(arguments, null);
+                if (findViewModel(screenId) != viewModel) {
+                    // evicted while onCreate was running
+                    viewModel.performDestroy();
+                }
+            }
+        });
+        return screenId;
+    }
+
+    /**
+     * Destroys a prefetched ViewModel that won't be used, for example because its page left the prefetch window.
+     * Does nothing if the ViewModel was already claimed by a screen.
+     *
+     * @param screenId identifier returned by {@link #prefetchViewModel(CreateViewModelCallback, Bundle, Executor)}
+     */
+    public void cancelPrefetch(final long screenId) {
+        final ArrayList<AbstractViewModel<? extends IView>> cancelled = new ArrayList<>(1);
+        synchronized (mCreateLock) {
+            if (mPrefetchedIds.remove(screenId)) {
+                removePrefetched(screenId, cancelled);
+            }
+        }
+        destroyPrefetched(cancelled);
+    }
+
+    /**
+     * @param prefetchLimit maximum number of prefetched ViewModels not yet claimed by a screen
+     */
+    public void setPrefetchLimit(final int prefetchLimit) {
+        final ArrayList<AbstractViewModel<? extends IView>> trimmed;
+        synchronized (mCreateLock) {
+            mPrefetchLimit = prefetchLimit;
+            trimmed = trimPrefetched(prefetchLimit);
+        }
+        destroyPrefetched(trimmed);
+    }
+
+    void claimPrefetchedViewModel(final long screenId) {
+        synchronized (mCreateLock) {
+            mPrefetchedIds.remove(screenId);
+        }
+    }
+
+    /**
+     * Removes the oldest prefetched ViewModels until at most the limit is left. Call with {@link #mCreateLock} held and
+     * pass the result to {@link #destroyPrefetched(ArrayList)} once it is released.
+     *
+     * @return the removed ViewModels that still have to be destroyed
+     */
+    @NonNull
+    private ArrayList<AbstractViewModel<? extends IView>> trimPrefetched(final int limit) {
+        final ArrayList<AbstractViewModel<? extends IView>> trimmed = new ArrayList<>(0);
+        final Iterator<Long> iterator = mPrefetchedIds.iterator();
+        while (mPrefetchedIds.size() > limit && iterator.hasNext()) {
+            final long screenId = iterator.next();
+            iterator.remove();
+            removePrefetched(screenId, trimmed);
+        }
+        return trimmed;
+    }
+
+    // call with mCreateLock held, adds the instance to destroy to removed
+    private void removePrefetched(final long screenId, @NonNull final ArrayList<AbstractViewModel<? extends IView>> removed) {
+        final AbstractViewModel<IView> viewModel = findViewModel(screenId);
+        // also drops an instance that is still being created
+        remove(screenId);
+        if (viewModel != null && viewModel.isCreated()) {
+            // otherwise the prefetch task destroys it once onCreate returns
+            removed.add(viewModel);
+        }
+    }
+
+    /**
+     * Destroys and recycles ViewModels removed by {@link #trimPrefetched(int)}. Call without holding {@link #mCreateLock},
+     * {@link AbstractViewModel#onDestroy()} and {@link RecyclableViewModel#onRecycle()} are user code.
+     */
+    private void destroyPrefetched(@NonNull final ArrayList<AbstractViewModel<? extends IView>> removed) {
+        for (final AbstractViewModel<? extends IView> viewModel : removed) {
+            viewModel.performDestroy();
+            recycle(viewModel);
+        }
+    }
+
+    /**
+     * Sets how many destroyed instances of each {@link RecyclableViewModel} class are kept for reuse, 3 by default.
+     *
+     * @param recyclePoolSize instances per class, 0 disables recycling
+     */
+    public void setRecyclePoolSize(final int recyclePoolSize) {
+        final ViewModelProvider rootScope = getRootScope();
+        synchronized (rootScope.mRecyclePoolLock) {
+            rootScope.mRecyclePoolSize = recyclePoolSize;
+            for (final ArrayList<AbstractViewModel<? extends IView>> pool : rootScope.mRecyclePool.values()) {
+                while (pool.size() > recyclePoolSize) {
+                    pool.remove(pool.size() - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes a destroyed instance of the class out of the recycle pool, call from {@code createViewModel()}.
+     *
+     * @return the instance, ready to be created again, or null if the pool is empty
+     * @see RecyclableViewModel
+     */
+    @Nullable
+    public <V extends AbstractViewModel<? extends IView>> V obtainRecycledViewModel(@NonNull final Class<V> viewModelClass) {
+        final ViewModelProvider rootScope = getRootScope();
+        final AbstractViewModel<? extends IView> viewModel;
+        synchronized (rootScope.mRecyclePoolLock) {
+            final ArrayList<AbstractViewModel<? extends IView>> pool = rootScope.mRecyclePool.get(viewModelClass);
+            if (pool == null || pool.isEmpty()) {
+                return null;
+            }
+            viewModel = pool.remove(pool.size() - 1);
+        }
+        viewModel.reuse();
+        return viewModelClass.cast(viewModel);
+    }
+
+    /**
+     * Puts a destroyed {@link RecyclableViewModel} into the recycle pool, unless the pool of its class is full.
+     * Call without holding {@link #mCreateLock}, {@link RecyclableViewModel#onRecycle()} is user code.
+     *
+     * @return true if the instance was pooled, it must not be used by its previous screen anymore
+     */
+    @MainThread
+    boolean recycle(@NonNull final AbstractViewModel<? extends IView> viewModel) {
+        if (!(viewModel instanceof RecyclableViewModel) || !viewModel.isDestroyed() || viewModel.isEvicted()) {
+            return false;
+        }
+        final ViewModelProvider rootScope = getRootScope();
+        synchronized (rootScope.mRecyclePoolLock) {
+            final ArrayList<AbstractViewModel<? extends IView>> pool = rootScope.mRecyclePool.get(viewModel.getClass());
+            if (pool != null && pool.size() >= rootScope.mRecyclePoolSize || rootScope.mRecyclePoolSize == 0) {
+                return false;
+            }
+        }
+        viewModel.clearForRecycling();
+        ((RecyclableViewModel) viewModel).onRecycle();
+        final ViewModelLeakWatcher leakWatcher = ViewModelHelper.getLeakWatcher();
+        if (leakWatcher != null) {
+            leakWatcher.unwatch(viewModel);
+        }
+        synchronized (rootScope.mRecyclePoolLock) {
+            ArrayList<AbstractViewModel<? extends IView>> pool = rootScope.mRecyclePool.get(viewModel.getClass());
+            if (pool == null) {
+                pool = new ArrayList<>(rootScope.mRecyclePoolSize);
+                rootScope.mRecyclePool.put(viewModel.getClass(), pool);
+            }
+            if (pool.size() < rootScope.mRecyclePoolSize) {
+                pool.add(viewModel);
+            }
+        }
+        return true;
+    }
+
+    @NonNull
+    private ViewModelProvider getRootScope() {
+        ViewModelProvider scope = this;
+        while (scope.mParentScope != null) {
+            scope = scope.mParentScope;
+        }
+        return scope;
     }
 
+    @SuppressWarnings("unchecked")
+    @Nullable
+    <T extends IView> AbstractViewModel<T> findViewModel(final long modelIdentifier) {
+        final AbstractViewModel<T> instance = (AbstractViewModel<T>) mViewModelCache.get(modelIdentifier);
+        if (instance == null && mParentScope != null) {
+            return mParentScope.findViewModel(modelIdentifier);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the ViewModel cached for the identifier in this scope or a parent scope, or creates it in this scope
+     * using the callback.
+     * A newly created instance has not received {@link AbstractViewModel#onCreate(android.os.Bundle, android.os.Bundle)}
+     * yet, see {@link AbstractViewModel#isCreated()}.
+     * <p>
+     * The callback runs without holding a lock, so a slow constructor on a background thread doesn't block
+     * screens looking up other ViewModels. Concurrent calls for the same identifier wait for that one instance.
+     * If the identifier is removed while its ViewModel is being created, the instance is returned but not cached.
+     */
     @SuppressWarnings("unchecked")
     @NonNull
-    public synchronized <T extends IView> ViewModelWrapper<T> getViewModel(final String modelIdentifier,
-                                                                           @NonNull final CreateViewModelCallback createViewModelCallback) {
-        AbstractViewModel<T> instance = (AbstractViewModel<T>) mViewModelCache.get(modelIdentifier);
+    public <T extends IView> AbstractViewModel<T> getViewModel(final long modelIdentifier,
+                                                              @NonNull final CreateViewModelCallback createViewModelCallback) {
+        AbstractViewModel<T> instance = findViewModel(modelIdentifier);
         if (instance != null) {
-            return new ViewModelWrapper<>(instance, false);
+            return instance;
+        }
+
+        final PendingCreation otherCreation;
+        final PendingCreation pendingCreation = new PendingCreation();
+        synchronized (mCreateLock) {
+            // another thread may have created the instance while we were waiting for the lock
+            instance = (AbstractViewModel<T>) mViewModelCache.get(modelIdentifier);
+            if (instance != null) {
+                return instance;
+            }
+            otherCreation = mPendingCreations.get(modelIdentifier);
+            if (otherCreation == null) {
+                mPendingCreations.put(modelIdentifier, pendingCreation);
+            }
+        }
+        if (otherCreation != null) {
+            return (AbstractViewModel<T>) otherCreation.await();
         }
 
         try {
             instance = createViewModelCallback.onViewModelRequested();
             instance.setUniqueIdentifier(modelIdentifier);
-            mViewModelCache.put(modelIdentifier, instance);
-            return new ViewModelWrapper<>(instance, true);
+            instance.setMainThreadDispatcher(mMainThreadDispatcher);
         } catch (Exception ex) {
-            throw new RuntimeException(ex);
+            final RuntimeException error = new RuntimeException(ex);
+            synchronized (mCreateLock) {
+                if (mPendingCreations.get(modelIdentifier) == pendingCreation) {
+                    mPendingCreations.remove(modelIdentifier);
+                }
+            }
+            pendingCreation.complete(null, error);
+            throw error;
+        }
+        synchronized (mCreateLock) {
+            if (!pendingCreation.mRemoved) {
+                mPendingCreations.remove(modelIdentifier);
+                final LongSparseArray<AbstractViewModel<? extends IView>> cache = mViewModelCache.clone();
+                cache.put(modelIdentifier, instance);
+                publishCache(cache);
+            }
         }
+        pendingCreation.complete(instance, null);
+        return instance;
     }
 
-    final static class ViewModelWrapper<T extends IView> {
-        @NonNull
-        final AbstractViewModel<T> viewModel;
-        final boolean wasCreated;
+    /**
+     * A ViewModel being created by one thread, other threads asking for the same identifier wait for it.
+     */
+    private static final class PendingCreation {
+
+        // guarded by the mCreateLock of the provider
+        boolean mRemoved;
 
-        private ViewModelWrapper(@NonNull AbstractViewModel<T> mViewModel, final boolean mWasCreated) {
-            this.viewModel = mViewModel;
-            this.wasCreated = mWasCreated;
+        // guarded by this
+        private boolean mDone;
+        @Nullable
+        private AbstractViewModel<? extends IView> mViewModel;
+        @Nullable
+        private RuntimeException mError;
+
+        synchronized void complete(@Nullable final AbstractViewModel<? extends IView> viewModel, @Nullable final RuntimeException error) {
+            mViewModel = viewModel;
+            mError = error;
+            mDone = true;
+            notifyAll();
+        }
+
+        @NonNull
+        synchronized AbstractViewModel<? extends IView> await() {
+            boolean interrupted = false;
+            while (!mDone) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (mError != null) {
+                throw mError;
+            }
+            //noinspection ConstantConditions
+            return mViewModel;
         }
     }
 }
@@ -0,0 +1,250 @@
+package eu.inloop.viewmodel;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Background work owned by a ViewModel, started with {@link AbstractViewModel#executeTask(ViewModelTask)}.
+ * <p>
+ * {@link #doInBackground()} runs on a bounded thread pool shared by all ViewModels, tasks with a higher
+ * priority are started first. Progress, the result and errors are delivered on the main thread, batched with the
+ * other updates of the owner (see {@link AbstractViewModel#runOnMainThread(Runnable)}). All
+ * tasks of a ViewModel that are still queued or running are cancelled after its {@link AbstractViewModel#onDestroy()},
+ * a cancelled task doesn't deliver anything.
+ *
+ * @param <Progress> type of the progress published with {@link #publishProgress(Object)}
+ * @param <Result>   type of the result of {@link #doInBackground()}
+ */
+public abstract class ViewModelTask<Progress, Result> implements Runnable, Comparable<ViewModelTask<?, ?>>, Cancellable {
+
+    private static final String TAG = "ViewModelTask"; //NON-NLS
+
+    public static final int PRIORITY_LOW = -10;
+    public static final int PRIORITY_DEFAULT = 0;
+    public static final int PRIORITY_HIGH = 10;
+
+    private static final int POOL_SIZE = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    @NonNull
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    @NonNull
+    private static final AtomicLong sSequence = new AtomicLong();
+    @NonNull
+    private static final Object NO_PROGRESS = new Object();
+    @NonNull
+    private static final ThreadPoolExecutor sExecutor = newExecutor();
+
+    private int mPriority;
+    private long mSequence;
+
+    @Nullable
+    private AbstractViewModel<?> mOwner;
+    // generation of the owner when the task was started
+    private int mOwnerGeneration;
+
+    private volatile boolean mCancelled;
+    private boolean mStarted;
+
+    // thread running doInBackground(), guarded by this
+    @Nullable
+    private Thread mThread;
+
+    // progress not delivered yet, or NO_PROGRESS
+    @NonNull
+    private final AtomicReference<Object> mLatestProgress = new AtomicReference<>(NO_PROGRESS);
+    @NonNull
+    private final AtomicBoolean mProgressPending = new AtomicBoolean();
+
+    // reused for every progress update, at most one is pending at a time
+    @NonNull
+    private final Runnable mProgressDelivery = new Runnable() {
+        @Override
+        public void run() {
+            mProgressPending.set(false);
+            final Object progress = mLatestProgress.getAndSet(NO_PROGRESS);
+            // already delivered by the previous run if it was published while that one was starting
+            if (progress != NO_PROGRESS && !mCancelled) {
+                @SuppressWarnings("unchecked")
+                final Progress typedProgress = (Progress) progress;
+                onProgressUpdate(typedProgress);
+            }
+        }
+    };
+
+    /**
+     * Runs on a background thread. Check {@link #isCancelled()} in long running loops.
+     *
+     * @return result delivered to {@link #onResult(Object)}
+     */
+    @WorkerThread
+    protected abstract Result doInBackground() throws Exception;
+
+    @MainThread
+    protected void onProgressUpdate(@Nullable final Progress progress) {
+
+    }
+
+    @MainThread
+    protected void onResult(@Nullable final Result result) {
+
+    }
+
+    /**
+     * Called when {@link #doInBackground()} threw an exception. Logs the exception by default.
+     */
+    @MainThread
+    protected void onError(@NonNull final Exception exception) {
+        Log.e(TAG, getClass().getName() + " failed", exception); //NON-NLS
+    }
+
+    /**
+     * Delivers the progress to {@link #onProgressUpdate(Object)} on the main thread. Progress published again before
+     * the main thread got to it replaces the pending one, only the latest is delivered.
+     */
+    @WorkerThread
+    protected final void publishProgress(@Nullable final Progress progress) {
+        if (mCancelled) {
+            return;
+        }
+        mLatestProgress.set(progress);
+        if (mProgressPending.compareAndSet(false, true) && !postToMainThread(mProgressDelivery)) {
+            // the owner is gone, nothing will be delivered anymore
+            mProgressPending.set(false);
+        }
+    }
+
+    /**
+     * Cancels the task. A queued task won't run, a running task is interrupted.
+     * Nothing is delivered to the main thread after this call.
+     */
+    @Override
+    public final void cancel() {
+        mCancelled = true;
+        sExecutor.remove(this);
+        synchronized (this) {
+            if (mThread != null) {
+                mThread.interrupt();
+            }
+        }
+    }
+
+    public final boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * @param owner ViewModel notified when the task finishes, or null for a task not owned by a single ViewModel
+     */
+    final void start(@Nullable final AbstractViewModel<?> owner, final int priority) {
+        synchronized (this) {
+            if (mStarted) {
+                throw new IllegalStateException("Task " + this + " was already executed"); //NON-NLS
+            }
+            mStarted = true;
+        }
+        mOwner = owner;
+        mOwnerGeneration = owner != null ? owner.getGeneration() : 0;
+        mPriority = priority;
+        mSequence = sSequence.incrementAndGet();
+        sExecutor.execute(this);
+    }
+
+    @Override
+    public final void run() {
+        synchronized (this) {
+            if (mCancelled) {
+                return;
+            }
+            mThread = Thread.currentThread();
+        }
+        Result result = null;
+        Exception exception = null;
+        try {
+            result = doInBackground();
+        } catch (Exception ex) {
+            exception = ex;
+        } finally {
+            synchronized (this) {
+                mThread = null;
+                // don't leak an interrupt from cancel() to the next task on this pool thread
+                //noinspection ResultOfMethodCallIgnored
+                Thread.interrupted();
+            }
+        }
+        final Result finalResult = result;
+        final Exception finalException = exception;
+        postToMainThread(new Runnable() {
+            @Override
+            public void run() {
+                finish(finalResult, finalException);
+            }
+        });
+    }
+
+    /**
+     * @return false if the action was dropped because the owner was destroyed or reused
+     */
+    private boolean postToMainThread(@NonNull final Runnable action) {
+        final AbstractViewModel<?> owner = mOwner;
+        if (owner != null) {
+            return owner.runOnMainThread(action, mOwnerGeneration);
+        } else {
+            return sMainHandler.post(action);
+        }
+    }
+
+    @MainThread
+    private void finish(@Nullable final Result result, @Nullable final Exception exception) {
+        if (mOwner != null) {
+            mOwner.onTaskFinished(this);
+            mOwner = null;
+        }
+        if (mCancelled) {
+            return;
+        }
+        if (exception != null) {
+            onError(exception);
+        } else {
+            onResult(result);
+        }
+    }
+
+    @Override
+    public final int compareTo(@NonNull final ViewModelTask<?, ?> other) {
+        if (mPriority != other.mPriority) {
+            return mPriority > other.mPriority ? -1 : 1;
+        }
+        return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+    }
+
+    @NonNull
+    private static ThreadPoolExecutor newExecutor() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                return new Thread(runnable, TAG + " #" + mCount.incrementAndGet()); //NON-NLS
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
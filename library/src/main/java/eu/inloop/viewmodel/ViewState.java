@@ -0,0 +1,189 @@
+package eu.inloop.viewmodel;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Immutable state snapshot owned by a ViewModel and rendered to its view. Replaces a series of imperative
+ * view calls with a single value: the ViewModel updates the state, the renderer turns it into view calls.
+ * <p>
+ * {@link #set(Object)} and {@link #update(Reducer)} may be called from any thread without locking, the state is
+ * swapped atomically. Updates equal to the current state are dropped, and updates arriving faster than the
+ * main thread renders are conflated: only the latest state is rendered, together with the other updates of the
+ * owner pending for the next frame (see {@link AbstractViewModel#runOnMainThread(Runnable)}). A state equal to the
+ * one rendered last is not rendered again.
+ * <p>
+ * The rendered state is recorded with {@link AbstractViewModel#runOnView(String, ViewCommand)}, so a view bound
+ * later receives the current snapshot right after {@link AbstractViewModel#onBindView(IView)}.
+ * <p>
+ * When a {@link RecyclableViewModel} owning the state is recycled, the state goes back to the initial one.
+ *
+ * @param <T> type of the view
+ * @param <S> type of the state, should be immutable and implement {@link Object#equals(Object)}
+ */
+public class ViewState<T extends IView, S> implements StateHolder {
+
+    public interface Renderer<T extends IView, S> {
+
+        @MainThread
+        void render(@NonNull T view, @Nullable S state);
+    }
+
+    /**
+     * Computes the next state from the current one, may be called several times if other threads update
+     * the state concurrently.
+     */
+    public interface Reducer<S> {
+
+        @Nullable
+        S reduce(@Nullable S state);
+    }
+
+    @NonNull
+    private final AbstractViewModel<T> mOwner;
+    @NonNull
+    private final String mKey;
+    @NonNull
+    private final Renderer<T, S> mRenderer;
+
+    @Nullable
+    private final S mInitialState;
+    @NonNull
+    private final AtomicReference<S> mState;
+    @NonNull
+    private final AtomicBoolean mDeliveryPending = new AtomicBoolean();
+
+    // main thread only
+    @Nullable
+    private S mRenderedState;
+    private boolean mRendered;
+
+    // reused for every delivery, at most one is pending at a time
+    @NonNull
+    private final Runnable mDelivery = new Runnable() {
+        @Override
+        public void run() {
+            mDeliveryPending.set(false);
+            deliver(mState.get());
+        }
+    };
+
+    @NonNull
+    private final ViewCommand<T> mRenderCommand = new ViewCommand<T>() {
+        @Override
+        public void execute(@NonNull T view) {
+            mRenderer.render(view, mRenderedState);
+        }
+    };
+
+    /**
+     * @param owner    ViewModel rendering the state
+     * @param key      key of the recorded render command, see {@link AbstractViewModel#runOnView(String, ViewCommand)}
+     * @param renderer turns the state into view calls
+     */
+    public ViewState(@NonNull final AbstractViewModel<T> owner, @NonNull final String key, @NonNull final Renderer<T, S> renderer) {
+        this(owner, key, renderer, null);
+    }
+
+    /**
+     * @param initialState rendered like a state set later, unless null
+     */
+    public ViewState(@NonNull final AbstractViewModel<T> owner, @NonNull final String key,
+                     @NonNull final Renderer<T, S> renderer, @Nullable final S initialState) {
+        mOwner = owner;
+        mKey = key;
+        mRenderer = renderer;
+        mInitialState = initialState;
+        mState = new AtomicReference<>(initialState);
+        owner.registerStateHolder(this);
+        if (initialState != null) {
+            scheduleDelivery();
+        }
+    }
+
+    /**
+     * @return the latest state, which may not have been rendered yet
+     */
+    @AnyThread
+    @Nullable
+    public S get() {
+        return mState.get();
+    }
+
+    @AnyThread
+    public void set(@Nullable final S state) {
+        final S previous = mState.getAndSet(state);
+        if (!equal(previous, state)) {
+            scheduleDelivery();
+        }
+    }
+
+    /**
+     * Atomically replaces the state with the one computed by the reducer.
+     *
+     * @return the new state
+     */
+    @AnyThread
+    @Nullable
+    public S update(@NonNull final Reducer<S> reducer) {
+        S previous;
+        S next;
+        do {
+            previous = mState.get();
+            next = reducer.reduce(previous);
+        } while (!mState.compareAndSet(previous, next));
+        if (!equal(previous, next)) {
+            scheduleDelivery();
+        }
+        return next;
+    }
+
+    @Override
+    @MainThread
+    public void reset() {
+        // a pending delivery was cancelled together with the other actions of the owner, or skipped by the
+        // dispatcher because the owner was destroyed before it ran
+        mDeliveryPending.set(false);
+        mState.set(mInitialState);
+        mRenderedState = null;
+        mRendered = false;
+    }
+
+    @Override
+    public void onReuse() {
+        if (mState.get() != null) {
+            scheduleDelivery();
+        }
+    }
+
+    private void scheduleDelivery() {
+        if (mDeliveryPending.compareAndSet(false, true)
+                && !mOwner.runOnMainThread(mDelivery, mOwner.getGeneration())) {
+            // dropped, a later update or a reused owner has to be able to deliver again
+            mDeliveryPending.set(false);
+            if (!mOwner.isDestroyed()) {
+                // the owner was reused while posting, deliver to its new lifecycle
+                scheduleDelivery();
+            }
+        }
+    }
+
+    @MainThread
+    private void deliver(@Nullable final S state) {
+        if (mRendered && equal(mRenderedState, state)) {
+            return;
+        }
+        mRendered = true;
+        mRenderedState = state;
+        mOwner.runOnView(mKey, mRenderCommand);
+    }
+
+    private static boolean equal(@Nullable final Object first, @Nullable final Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
@@ -2,11 +2,14 @@ package eu.inloop.viewmodel.base;
 
 import android.os.Bundle;
 
+import java.util.concurrent.Executor;
+
 import androidx.annotation.CallSuper;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import eu.inloop.viewmodel.AbstractViewModel;
 import eu.inloop.viewmodel.IView;
+import eu.inloop.viewmodel.SharedViewModelStore;
 import eu.inloop.viewmodel.ViewModelHelper;
 
 public abstract class ViewModelBaseActivity<T extends IView, R extends AbstractViewModel<T>> extends ViewModelBaseEmptyActivity implements IView {
@@ -14,16 +17,22 @@ public abstract class ViewModelBaseActivity<T extends IView, R extends AbstractV
     @NonNull
     private final ViewModelHelper<T, R> mViewModeHelper = new ViewModelHelper<>();
 
+    // allocated once per activity instance, not on every onCreate
+    @NonNull
+    private final CreateViewModelCallback<T, R> mCreateViewModelCallback = new CreateViewModelCallback<T, R>() {
+        @Override
+        public R onViewModelRequested() {
+            return createViewModel();
+        }
+    };
+
     @CallSuper
     @Override
     protected void onCreate(@Nullable final Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mViewModeHelper.onCreate(this, savedInstanceState, new CreateViewModelCallback() {
-            @Override
-            public AbstractViewModel onViewModelRequested() {
-                return createViewModel();
-            }
-        }, getIntent().getExtras());
+        mViewModeHelper.setSharedViewModelKey(getSharedViewModelKey());
+        mViewModeHelper.setLazyCreation(isViewModelCreatedLazily());
+        mViewModeHelper.onCreate(this, savedInstanceState, mCreateViewModelCallback, getIntent().getExtras(), getViewModelExecutor());
     }
 
     /**
@@ -38,6 +47,38 @@ public abstract class ViewModelBaseActivity<T extends IView, R extends AbstractV
 
     public abstract R createViewModel();
 
+    /**
+     * Override to create the ViewModel off the main thread.
+     *
+     * @return executor for {@link #createViewModel()} and {@link AbstractViewModel#onCreate(Bundle, Bundle)},
+     * or null to create the ViewModel synchronously in onCreate
+     * @see ViewModelHelper#onCreate(android.app.Activity, Bundle, CreateViewModelCallback, Bundle, Executor)
+     */
+    @Nullable
+    protected Executor getViewModelExecutor() {
+        return null;
+    }
+
+    /**
+     * Override to share the ViewModel with other screens using the same key, see {@link SharedViewModelStore}.
+     *
+     * @return key of the shared ViewModel, or null for a ViewModel owned by this screen
+     */
+    @Nullable
+    protected String getSharedViewModelKey() {
+        return null;
+    }
+
+    /**
+     * Override to create the ViewModel on the first {@link #setModelView(IView)} or {@link #getViewModel()} call
+     * instead of in onCreate.
+     *
+     * @see ViewModelHelper#setLazyCreation(boolean)
+     */
+    protected boolean isViewModelCreatedLazily() {
+        return false;
+    }
+
     @CallSuper
     @Override
     public void onSaveInstanceState(@NonNull final Bundle outState) {
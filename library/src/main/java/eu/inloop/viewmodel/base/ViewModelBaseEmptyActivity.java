@@ -3,9 +3,11 @@ package eu.inloop.viewmodel.base;
 import android.os.Bundle;
 
 import androidx.annotation.CallSuper;
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import eu.inloop.viewmodel.IViewModelProvider;
+import eu.inloop.viewmodel.ResultCache;
 import eu.inloop.viewmodel.ViewModelProvider;
 
 /**
@@ -22,8 +24,12 @@ public abstract class ViewModelBaseEmptyActivity extends AppCompatActivity imple
     @Override
     protected void onCreate(@Nullable final Bundle savedInstanceState) {
         //This code must be execute prior to super.onCreate()
-        mViewModelProvider = ViewModelProvider.newInstance(this);
+        //Only the provider retained over a configuration change is taken here, a new one is created on first use
+        if (getLastCustomNonConfigurationInstance() != null) {
+            mViewModelProvider = ViewModelProvider.newInstance(this);
+        }
         super.onCreate(savedInstanceState);
+        ResultCache.registerComponentCallbacks(this);
     }
 
     @Override
@@ -36,17 +42,29 @@ public abstract class ViewModelBaseEmptyActivity extends AppCompatActivity imple
     @Override
     public void onStop() {
         super.onStop();
-        if (isFinishing()) {
-            if (null == mViewModelProvider) {
-                throw new IllegalStateException("ViewModelProvider for activity " + this + " was null."); //NON-NLS
-            }
+        if (isFinishing() && mViewModelProvider != null) {
             mViewModelProvider.removeAllViewModels();
         }
     }
 
-    @Nullable
+    @CallSuper
+    @Override
+    public void onTrimMemory(final int level) {
+        super.onTrimMemory(level);
+        if (mViewModelProvider != null) {
+            mViewModelProvider.onTrimMemory(level);
+        }
+    }
+
+    /**
+     * @return the provider, created on the first call so activities without ViewModels don't allocate one
+     */
+    @NonNull
     @Override
     public ViewModelProvider getViewModelProvider() {
+        if (mViewModelProvider == null) {
+            mViewModelProvider = ViewModelProvider.newInstance(this);
+        }
         return mViewModelProvider;
     }
 }
@@ -3,29 +3,46 @@ package eu.inloop.viewmodel.base;
 import android.os.Bundle;
 import android.view.View;
 
+import java.util.concurrent.Executor;
+
 import androidx.annotation.CallSuper;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentActivity;
 import eu.inloop.viewmodel.AbstractViewModel;
 import eu.inloop.viewmodel.IView;
+import eu.inloop.viewmodel.IViewModelProvider;
+import eu.inloop.viewmodel.RecyclableViewModel;
+import eu.inloop.viewmodel.SharedViewModelStore;
 import eu.inloop.viewmodel.ViewModelHelper;
+import eu.inloop.viewmodel.ViewModelProvider;
 
-public abstract class ViewModelBaseFragment<T extends IView, R extends AbstractViewModel<T>> extends Fragment implements IView {
+public abstract class ViewModelBaseFragment<T extends IView, R extends AbstractViewModel<T>> extends Fragment implements IView, IViewModelProvider {
 
     @NonNull
     private final ViewModelHelper<T, R> mViewModelHelper = new ViewModelHelper<>();
 
+    // allocated once per fragment instance, not on every onCreate
+    @NonNull
+    private final CreateViewModelCallback<T, R> mCreateViewModelCallback = new CreateViewModelCallback<T, R>() {
+        @Override
+        public R onViewModelRequested() {
+            return createViewModel();
+        }
+    };
+
     @CallSuper
     @Override
     public void onCreate(@Nullable final Bundle savedInstanceState) {
+        //This code must be executed prior to super.onCreate(), which creates the restored child fragments
+        //that look up their ViewModels in the scope of this fragment
+        final Fragment parentFragment = getParentFragment();
+        mViewModelHelper.setParentScope(parentFragment instanceof IViewModelProvider ? (IViewModelProvider) parentFragment : null);
+        mViewModelHelper.setSharedViewModelKey(getSharedViewModelKey());
+        mViewModelHelper.setLazyCreation(isViewModelCreatedLazily());
+        mViewModelHelper.onCreate(getActivity(), savedInstanceState, mCreateViewModelCallback, getArguments(), getViewModelExecutor());
         super.onCreate(savedInstanceState);
-        mViewModelHelper.onCreate(getActivity(), savedInstanceState, new CreateViewModelCallback() {
-            @Override
-            public AbstractViewModel onViewModelRequested() {
-                return createViewModel();
-            }
-        }, getArguments());
     }
 
     /**
@@ -40,6 +57,53 @@ public abstract class ViewModelBaseFragment<T extends IView, R extends AbstractV
     @Nullable
     public abstract R createViewModel();
 
+    /**
+     * Override to create the ViewModel off the main thread.
+     *
+     * @return executor for {@link #createViewModel()} and {@link AbstractViewModel#onCreate(Bundle, Bundle)},
+     * or null to create the ViewModel synchronously in onCreate
+     * @see ViewModelHelper#onCreate(android.app.Activity, Bundle, CreateViewModelCallback, Bundle, Executor)
+     */
+    @Nullable
+    protected Executor getViewModelExecutor() {
+        return null;
+    }
+
+    /**
+     * Override to share the ViewModel with other screens using the same key, see {@link SharedViewModelStore}.
+     *
+     * @return key of the shared ViewModel, or null for a ViewModel owned by this screen
+     */
+    @Nullable
+    protected String getSharedViewModelKey() {
+        return null;
+    }
+
+    /**
+     * Override to create the ViewModel on the first {@link #setModelView(IView)} or {@link #getViewModel()} call
+     * instead of in onCreate.
+     *
+     * @see ViewModelHelper#setLazyCreation(boolean)
+     */
+    protected boolean isViewModelCreatedLazily() {
+        return false;
+    }
+
+    /**
+     * Call from {@link #createViewModel()} to reuse a destroyed ViewModel, see {@link RecyclableViewModel}.
+     *
+     * @return the pooled instance, or null if there is none
+     */
+    @Nullable
+    protected final <V extends R> V obtainRecycledViewModel(@NonNull final Class<V> viewModelClass) {
+        final FragmentActivity activity = getActivity();
+        if (!(activity instanceof IViewModelProvider)) {
+            return null;
+        }
+        final ViewModelProvider viewModelProvider = ((IViewModelProvider) activity).getViewModelProvider();
+        return viewModelProvider != null ? viewModelProvider.obtainRecycledViewModel(viewModelClass) : null;
+    }
+
     @CallSuper
     @Override
     public void onSaveInstanceState(@NonNull final Bundle outState) {
@@ -75,6 +139,15 @@ public abstract class ViewModelBaseFragment<T extends IView, R extends AbstractV
         super.onDestroy();
     }
 
+    /**
+     * @return the scope for the ViewModels of child fragments, see {@link ViewModelHelper#getChildViewModelProvider()}
+     */
+    @Nullable
+    @Override
+    public ViewModelProvider getViewModelProvider() {
+        return mViewModelHelper.getChildViewModelProvider();
+    }
+
     /**
      * @see ViewModelHelper#getViewModel()
      */
@@ -0,0 +1,62 @@
+package eu.inloop.viewmodel;
+
+import java.lang.management.ManagementFactory;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Counts the bytes allocated by the current thread, using the HotSpot thread allocation counter.
+ */
+final class AllocationCounter {
+
+    private static final int WARMUP_ITERATIONS = 10000;
+
+    private AllocationCounter() {
+    }
+
+    /**
+     * Runs the action repeatedly, first to warm up and then measured.
+     *
+     * @return bytes allocated by the measured iterations
+     */
+    static long measure(final int iterations, @NonNull final Runnable action) {
+        final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            action.run();
+        }
+        // the counter itself may allocate, measure that first
+        final long calibrationStart = threadBean.getThreadAllocatedBytes(threadId);
+        final long overhead = threadBean.getThreadAllocatedBytes(threadId) - calibrationStart;
+        final long start = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            action.run();
+        }
+        return threadBean.getThreadAllocatedBytes(threadId) - start - overhead;
+    }
+
+    /**
+     * Like {@link #measure(int, Runnable)}, but runs the setup before every iteration without counting it.
+     *
+     * @return bytes allocated by the measured iterations of the action
+     */
+    static long measure(final int warmupIterations, final int iterations, @NonNull final Runnable setup,
+                        @NonNull final Runnable action) {
+        final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < warmupIterations; i++) {
+            setup.run();
+            action.run();
+        }
+        final long calibrationStart = threadBean.getThreadAllocatedBytes(threadId);
+        final long overhead = threadBean.getThreadAllocatedBytes(threadId) - calibrationStart;
+        long allocated = 0;
+        for (int i = 0; i < iterations; i++) {
+            setup.run();
+            final long start = threadBean.getThreadAllocatedBytes(threadId);
+            action.run();
+            allocated += threadBean.getThreadAllocatedBytes(threadId) - start - overhead;
+        }
+        return allocated;
+    }
+}
@@ -0,0 +1,169 @@
+package eu.inloop.viewmodel;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Bundle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowAppTask;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import eu.inloop.viewmodel.base.CreateViewModelCallback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class FileSavedStateStoreTest {
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final int TASK_ID = 7;
+    private static final String KEY = "key"; //NON-NLS
+
+    private TestActivity mActivity;
+    private File mDirectory;
+
+    @Before
+    public void setUp() {
+        mActivity = Robolectric.buildActivity(TestActivity.class).setup().get();
+        mDirectory = new File(mActivity.getFilesDir(), "viewmodel_state"); //NON-NLS
+        setRestorableTasks(TASK_ID);
+    }
+
+    @After
+    public void tearDown() {
+        ViewModelHelper.setSavedStateStore(null);
+        mActivity.getViewModelProvider().removeAllViewModels();
+    }
+
+    @Test
+    public void stateIsReadBackBeforeAndAfterItIsWritten() {
+        final FileSavedStateStore store = new FileSavedStateStore(mActivity);
+        assertTrue(store.write(TASK_ID, 1, newState("value")) > 0); //NON-NLS
+        assertEquals("value", store.read(TASK_ID, 1).getString(KEY)); //NON-NLS
+
+        awaitFile(getFile(TASK_ID, 1));
+        // a new process only finds the file
+        assertEquals("value", new FileSavedStateStore(mActivity).read(TASK_ID, 1).getString(KEY)); //NON-NLS
+    }
+
+    @Test
+    public void cleanupKeepsSnapshotsOfRestorableTasks() throws IOException {
+        final File restorable = getFile(TASK_ID, 1);
+        final File removedTask = getFile(TASK_ID + 1, 2);
+        final File leftOverTemp = new File(restorable.getParentFile(), "3.state.tmp"); //NON-NLS
+        createFile(restorable);
+        createFile(removedTask);
+        createFile(leftOverTemp);
+
+        final FileSavedStateStore store = new FileSavedStateStore(mActivity);
+        // files are written after the cleanup scheduled by the constructor
+        store.write(TASK_ID, 4, newState("value")); //NON-NLS
+        awaitFile(getFile(TASK_ID, 4));
+
+        assertTrue(restorable.isFile());
+        assertFalse(removedTask.getParentFile().exists());
+        assertFalse(leftOverTemp.exists());
+    }
+
+    @Test
+    public void screenWithLostSnapshotIsRestoredWithoutState() {
+        final Bundle[] restoredState = {new Bundle()};
+        final Bundle savedState = new Bundle();
+        ViewModelHelper.setSavedStateStore(new FileSavedStateStore(mActivity));
+        final ViewModelHelper<IView, TestViewModel> helper = new ViewModelHelper<>();
+        helper.onCreate(mActivity, null, TestViewModel.FACTORY, null);
+        helper.onSaveInstanceState(savedState);
+        mActivity.getViewModelProvider().removeAllViewModels();
+
+        // the process was killed before the snapshot was written
+        final File taskDirectory = new File(mDirectory, Integer.toString(mActivity.getTaskId()));
+        final File[] snapshots = awaitFiles(taskDirectory);
+        assertTrue(snapshots[0].delete());
+        ViewModelHelper.setSavedStateStore(new FileSavedStateStore(mActivity));
+        final ViewModelHelper<IView, TestViewModel> restored = new ViewModelHelper<>();
+        restored.onCreate(mActivity, savedState, new CreateViewModelCallback<IView, TestViewModel>() {
+            @Override
+            public TestViewModel onViewModelRequested() {
+                return new TestViewModel() {
+                    @Override
+                    public void onCreate(@Nullable Bundle arguments, @Nullable Bundle savedInstanceState) {
+                        super.onCreate(arguments, savedInstanceState);
+                        restoredState[0] = savedInstanceState;
+                    }
+                };
+            }
+        }, null);
+        assertNull(restoredState[0]);
+    }
+
+    private void setRestorableTasks(final int taskId) {
+        final ActivityManager.AppTask appTask = ShadowAppTask.newInstance();
+        final ActivityManager.RecentTaskInfo taskInfo = new ActivityManager.RecentTaskInfo();
+        //noinspection deprecation
+        taskInfo.persistentId = taskId;
+        shadowOf(appTask).setTaskInfo(taskInfo);
+        final ActivityManager activityManager = (ActivityManager) mActivity.getSystemService(Context.ACTIVITY_SERVICE);
+        shadowOf(activityManager).setAppTasks(Collections.singletonList(appTask));
+    }
+
+    @NonNull
+    private File getFile(final int taskId, final long screenId) {
+        return new File(new File(mDirectory, Integer.toString(taskId)), screenId + ".state"); //NON-NLS
+    }
+
+    @NonNull
+    private static Bundle newState(@NonNull final String value) {
+        final Bundle state = new Bundle();
+        state.putString(KEY, value);
+        return state;
+    }
+
+    private static void createFile(@NonNull final File file) throws IOException {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        new FileOutputStream(file).close();
+    }
+
+    private static void awaitFile(@NonNull final File file) {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!file.isFile()) {
+            assertTrue("timed out waiting for " + file, System.currentTimeMillis() < deadline); //NON-NLS
+            sleep();
+        }
+    }
+
+    @NonNull
+    private static File[] awaitFiles(@NonNull final File directory) {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        File[] files = directory.listFiles();
+        while (files == null || files.length == 0) {
+            assertTrue("timed out waiting for files in " + directory, System.currentTimeMillis() < deadline); //NON-NLS
+            sleep();
+            files = directory.listFiles();
+        }
+        return files;
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package eu.inloop.viewmodel;
+
+import android.os.Bundle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The steady-state lifecycle transitions of a screen must not allocate.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LifecycleAllocationTest {
+
+    private static final int ITERATIONS = 10000;
+    // recreating an activity is slow, rotations run fewer iterations
+    private static final int ROTATION_WARMUP_ITERATIONS = 500;
+    private static final int ROTATION_ITERATIONS = 500;
+
+    private final IView mView = new IView() {
+    };
+
+    private ActivityController<TestActivity> mActivityController;
+    private TestActivity mActivity;
+    private ViewModelHelper<IView, TestViewModel> mHelper;
+    private Bundle mSavedState;
+
+    @Before
+    public void setUp() {
+        mActivityController = Robolectric.buildActivity(TestActivity.class).setup();
+        mActivity = mActivityController.get();
+        mHelper = new ViewModelHelper<>();
+        mHelper.onCreate(mActivity, null, TestViewModel.FACTORY, null);
+        mHelper.setView(mView);
+        mSavedState = new Bundle();
+        mHelper.onSaveInstanceState(mSavedState);
+    }
+
+    @After
+    public void tearDown() {
+        mActivity.getViewModelProvider().removeAllViewModels();
+    }
+
+    @Test
+    public void startStopDoesNotAllocate() {
+        assertNoAllocations(new Runnable() {
+            @Override
+            public void run() {
+                mHelper.onStart();
+                mHelper.onStop();
+            }
+        });
+    }
+
+    @Test
+    public void rotationDoesNotAllocate() {
+        // every rotation recreates the activity, which creates a fresh helper restoring the cached ViewModel.
+        // Recreating the activity and constructing its helper is not counted, the helper's lifecycle calls are
+        mHelper.onStop();
+        mHelper.onDestroy(mActivity);
+        final long allocated = AllocationCounter.measure(ROTATION_WARMUP_ITERATIONS, ROTATION_ITERATIONS, new Runnable() {
+            @Override
+            public void run() {
+                mActivityController.recreate();
+                mActivity = mActivityController.get();
+                mHelper = new ViewModelHelper<>();
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                mHelper.onCreate(mActivity, mSavedState, TestViewModel.FACTORY, null);
+                mHelper.setView(mView);
+                mHelper.onStart();
+                mHelper.onStop();
+                mHelper.onDestroy(mActivity);
+            }
+        });
+        assertNoAllocations(allocated, ROTATION_ITERATIONS);
+    }
+
+    @Test
+    public void cacheHitDoesNotAllocate() {
+        final ViewModelProvider provider = mActivity.getViewModelProvider();
+        final long screenId = mHelper.getViewModel().getUniqueId();
+        assertNoAllocations(new Runnable() {
+            @Override
+            public void run() {
+                provider.getViewModel(screenId, TestViewModel.FACTORY);
+            }
+        });
+    }
+
+    private static void assertNoAllocations(final Runnable transition) {
+        assertNoAllocations(AllocationCounter.measure(ITERATIONS, transition), ITERATIONS);
+    }
+
+    private static void assertNoAllocations(final long allocated, final int iterations) {
+        // less than a byte per transition, so no transition allocated an object
+        assertTrue("allocated " + allocated + " bytes in " + iterations + " transitions", allocated < iterations); //NON-NLS
+    }
+}
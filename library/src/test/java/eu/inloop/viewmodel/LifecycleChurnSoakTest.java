@@ -0,0 +1,307 @@
+package eu.inloop.viewmodel;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.LooperMode;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Properties;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentManager;
+import androidx.fragment.app.FragmentStatePagerAdapter;
+import androidx.viewpager.widget.ViewPager;
+import eu.inloop.viewmodel.base.ViewModelBaseActivity;
+import eu.inloop.viewmodel.base.ViewModelBaseEmptyActivity;
+import eu.inloop.viewmodel.base.ViewModelBaseFragment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Repeats the lifecycle transitions of a screen thousands of times and fails when ViewModels pile up in the
+ * provider, destroyed activities stay reachable, the heap keeps growing or a transition gets slower than the limits
+ * in the soak baseline. Catches slow leaks which only show after hours of real use.
+ * <p>
+ * The limits are read from the file in the {@code soak.baseline} system property, set by the Gradle build to
+ * {@code soak-baseline.properties} of this module. They are recorded on the build machine with headroom for
+ * slower build boxes, raise them only together with the change that needs it.
+ */
+@RunWith(RobolectricTestRunner.class)
+// fragment transactions are executed when the main looper is idle, like on a device
+@LooperMode(LooperMode.Mode.PAUSED)
+public class LifecycleChurnSoakTest {
+
+    private static final int ROTATIONS = 5000;
+    private static final int BACK_STACK_PUSH_POPS = 1000;
+    private static final int PAGER_SWIPES = 5000;
+    private static final int PROCESS_DEATH_RESTORES = 1000;
+    // transitions run before the heap is sampled, so lazily created caches don't count as growth
+    private static final int WARM_UP = 100;
+
+    private static final int PAGER_PAGES = 10;
+    private static final int PAGER_ID = 1;
+
+    // the activity and its fragment
+    private static final int SCREEN_VIEW_MODELS = 2;
+
+    private static Properties sBaseline;
+
+    // the screen under test, replaced by rotations and process death restores
+    private ActivityController<? extends ViewModelBaseEmptyActivity> mController;
+    @NonNull
+    private final ArrayList<WeakReference<Activity>> mDestroyedActivities = new ArrayList<>();
+
+    @BeforeClass
+    public static void loadBaseline() throws IOException {
+        final String path = System.getProperty("soak.baseline"); //NON-NLS
+        if (path == null || !new File(path).isFile()) {
+            throw new IllegalStateException("No soak baseline at " + path + ", run through Gradle or set -Dsoak.baseline"); //NON-NLS
+        }
+        sBaseline = new Properties();
+        try (InputStream input = new FileInputStream(path)) {
+            sBaseline.load(input);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (mController != null) {
+            final Activity activity = mController.get();
+            activity.finish();
+            mController.pause().stop().destroy();
+            onActivityDestroyed(activity);
+        }
+    }
+
+    @Test
+    public void rotations() {
+        mController = Robolectric.buildActivity(ChurnActivity.class).setup();
+        assertWithinBaselines("rotations", ROTATIONS, SCREEN_VIEW_MODELS, new Runnable() { //NON-NLS
+            @Override
+            public void run() {
+                final Activity activity = mController.get();
+                mController.recreate();
+                onActivityDestroyed(activity);
+            }
+        });
+    }
+
+    @Test
+    public void backStackPushPops() {
+        mController = Robolectric.buildActivity(ChurnActivity.class).setup();
+        assertWithinBaselines("backStackPushPops", BACK_STACK_PUSH_POPS, SCREEN_VIEW_MODELS, new Runnable() { //NON-NLS
+            @Override
+            public void run() {
+                // another fragment replaces the screen's one, then is removed by going back
+                final FragmentManager fragmentManager = mController.get().getSupportFragmentManager();
+                fragmentManager.beginTransaction()
+                        .replace(android.R.id.content, new ChurnFragment())
+                        .addToBackStack(null)
+                        .commit();
+                fragmentManager.executePendingTransactions();
+                assertEquals(SCREEN_VIEW_MODELS + 1, mController.get().getViewModelProvider().getViewModelCount());
+                assertTrue(fragmentManager.popBackStackImmediate());
+            }
+        });
+    }
+
+    @Test
+    public void pagerSwipes() {
+        final ActivityController<PagerActivity> controller = Robolectric.buildActivity(PagerActivity.class).setup();
+        mController = controller;
+        final ViewPager viewPager = controller.get().mViewPager;
+        final int[] direction = {1};
+        // pages leaving the offscreen window keep their ViewModel together with their saved state,
+        // after the warm-up every page has one
+        assertWithinBaselines("pagerSwipes", PAGER_SWIPES, PAGER_PAGES + 1, new Runnable() { //NON-NLS
+            @Override
+            public void run() {
+                // swipes to the last page and back
+                final int page = viewPager.getCurrentItem();
+                if (page + direction[0] < 0 || page + direction[0] >= PAGER_PAGES) {
+                    direction[0] = -direction[0];
+                }
+                viewPager.setCurrentItem(page + direction[0], false);
+                shadowOf(Looper.getMainLooper()).idle();
+                assertEquals(page + direction[0], viewPager.getCurrentItem());
+            }
+        });
+    }
+
+    @Test
+    public void processDeathRestores() {
+        mController = Robolectric.buildActivity(ChurnActivity.class).setup();
+        assertWithinBaselines("processDeathRestores", PROCESS_DEATH_RESTORES, SCREEN_VIEW_MODELS, new Runnable() { //NON-NLS
+            @Override
+            public void run() {
+                final Bundle savedState = new Bundle();
+                mController.pause().stop().saveInstanceState(savedState);
+                // the process is killed together with the ViewModels, a new activity restores the screen
+                final ViewModelBaseEmptyActivity activity = mController.get();
+                activity.getViewModelProvider().removeAllViewModels();
+                mController.destroy();
+                onActivityDestroyed(activity);
+                mController = Robolectric.buildActivity(ChurnActivity.class).setup(savedState);
+            }
+        });
+    }
+
+    /**
+     * @param name                   prefix of the limits in the soak baseline
+     * @param expectedViewModelCount ViewModels in the provider of the screen after each transition
+     */
+    private void assertWithinBaselines(@NonNull final String name, final int iterations, final int expectedViewModelCount,
+                                       @NonNull final Runnable transition) {
+        final long maxHeapGrowth = getLimit(name + ".heapGrowthBytes"); //NON-NLS
+        final long maxMedianNanos = getLimit(name + ".medianNanos"); //NON-NLS
+        final long maxP99Nanos = getLimit(name + ".p99Nanos"); //NON-NLS
+        for (int i = 0; i < WARM_UP; i++) {
+            transition.run();
+        }
+        final long heapBefore = usedHeapAfterGc();
+        final long[] durations = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            final long start = System.nanoTime();
+            transition.run();
+            durations[i] = System.nanoTime() - start;
+            assertEquals("live ViewModels after transition " + i, //NON-NLS
+                    expectedViewModelCount, mController.get().getViewModelProvider().getViewModelCount());
+        }
+        final long heapGrowth = usedHeapAfterGc() - heapBefore;
+        int reachableActivities = 0;
+        for (final WeakReference<Activity> activity : mDestroyedActivities) {
+            if (activity.get() != null) {
+                reachableActivities++;
+            }
+        }
+        assertEquals("destroyed activities still reachable", 0, reachableActivities); //NON-NLS
+        assertTrue("heap grew by " + heapGrowth + " bytes in " + iterations + " transitions", //NON-NLS
+                heapGrowth <= maxHeapGrowth);
+
+        Arrays.sort(durations);
+        final long median = durations[iterations / 2];
+        final long p99 = durations[iterations * 99 / 100];
+        assertTrue("median transition took " + median + "ns", median <= maxMedianNanos); //NON-NLS
+        assertTrue("99th percentile transition took " + p99 + "ns", p99 <= maxP99Nanos); //NON-NLS
+    }
+
+    private void onActivityDestroyed(@NonNull final Activity activity) {
+        // removed by the framework after onDestroy(), Robolectric 4.3 leaves it attached and so every activity reachable
+        activity.getWindowManager().removeViewImmediate(activity.getWindow().getDecorView());
+        mDestroyedActivities.add(new WeakReference<>(activity));
+    }
+
+    private static long getLimit(@NonNull final String name) {
+        final String value = sBaseline.getProperty(name);
+        if (value == null) {
+            throw new IllegalStateException("No " + name + " in the soak baseline"); //NON-NLS
+        }
+        return Long.parseLong(value);
+    }
+
+    private static long usedHeapAfterGc() {
+        final Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // a single gc() is only a hint, settle on the lowest reading
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /**
+     * Screen with a ViewModel of its own and one of its fragment.
+     */
+    public static class ChurnActivity extends ViewModelBaseActivity<IView, TestViewModel> {
+
+        @Override
+        protected void onCreate(@Nullable final Bundle savedInstanceState) {
+            super.onCreate(savedInstanceState);
+            setModelView(this);
+            if (savedInstanceState == null) {
+                getSupportFragmentManager().beginTransaction().add(android.R.id.content, new ChurnFragment()).commit();
+            }
+        }
+
+        @Override
+        public TestViewModel createViewModel() {
+            return new TestViewModel();
+        }
+    }
+
+    /**
+     * Screen with a ViewModel of its own and a pager of fragments.
+     */
+    public static class PagerActivity extends ViewModelBaseActivity<IView, TestViewModel> {
+
+        ViewPager mViewPager;
+
+        @Override
+        protected void onCreate(@Nullable final Bundle savedInstanceState) {
+            super.onCreate(savedInstanceState);
+            setModelView(this);
+            mViewPager = new ViewPager(this);
+            mViewPager.setId(PAGER_ID);
+            mViewPager.setAdapter(new FragmentStatePagerAdapter(getSupportFragmentManager()) {
+                @Override
+                public Fragment getItem(final int position) {
+                    return new ChurnFragment();
+                }
+
+                @Override
+                public int getCount() {
+                    return PAGER_PAGES;
+                }
+            });
+            setContentView(mViewPager);
+        }
+
+        @Override
+        public TestViewModel createViewModel() {
+            return new TestViewModel();
+        }
+    }
+
+    public static class ChurnFragment extends ViewModelBaseFragment<IView, TestViewModel> {
+
+        @Override
+        public View onCreateView(@NonNull final LayoutInflater inflater, @Nullable final ViewGroup container,
+                                 @Nullable final Bundle savedInstanceState) {
+            return new View(getActivity());
+        }
+
+        @Override
+        public void onViewCreated(@NonNull final View view, @Nullable final Bundle savedInstanceState) {
+            super.onViewCreated(view, savedInstanceState);
+            setModelView(this);
+        }
+
+        @Override
+        public TestViewModel createViewModel() {
+            return new TestViewModel();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package eu.inloop.viewmodel;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LifecycleHistogramsTest {
+
+    private LifecycleHistograms mHistograms;
+
+    @Before
+    public void setUp() {
+        mHistograms = new LifecycleHistograms();
+    }
+
+    @Test
+    public void bucketsCoverEveryDuration() {
+        final long[] durations = {0, 1, 3, 4, 5, 7, 8, 1000, 1023, 1024, 123456789, Long.MAX_VALUE / 2, Long.MAX_VALUE};
+        for (final long duration : durations) {
+            final int index = LifecycleHistograms.bucketIndex(duration);
+            assertTrue("upper bound of " + duration, LifecycleHistograms.bucketUpperBound(index) >= duration);
+            if (index > 0) {
+                assertTrue("upper bound of the previous bucket of " + duration,
+                        LifecycleHistograms.bucketUpperBound(index - 1) < duration);
+            }
+        }
+        for (long duration = 0; duration < 10000; duration++) {
+            final int index = LifecycleHistograms.bucketIndex(duration);
+            assertTrue(LifecycleHistograms.bucketUpperBound(index) >= duration);
+            assertTrue(index == 0 || LifecycleHistograms.bucketUpperBound(index - 1) < duration);
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        for (int i = 0; i < 99; i++) {
+            mHistograms.onLifecycleEvent(TestViewModel.class, LifecycleTracer.EVENT_ON_CREATE, 1000);
+        }
+        mHistograms.onLifecycleEvent(TestViewModel.class, LifecycleTracer.EVENT_ON_CREATE, 1000000);
+
+        assertEquals(100, mHistograms.getCount(TestViewModel.class, LifecycleTracer.EVENT_ON_CREATE));
+        assertWithinPrecision(1000, mHistograms.getPercentileNanos(TestViewModel.class, LifecycleTracer.EVENT_ON_CREATE, 0.5));
+        assertWithinPrecision(1000, mHistograms.getPercentileNanos(TestViewModel.class, LifecycleTracer.EVENT_ON_CREATE, 0.99));
+        assertWithinPrecision(1000000, mHistograms.getPercentileNanos(TestViewModel.class, LifecycleTracer.EVENT_ON_CREATE, 1));
+    }
+
+    @Test
+    public void eventsAreRecordedSeparately() {
+        mHistograms.onLifecycleEvent(TestViewModel.class, LifecycleTracer.EVENT_ON_CREATE, 1000);
+
+        assertEquals(0, mHistograms.getCount(TestViewModel.class, LifecycleTracer.EVENT_ON_DESTROY));
+        assertEquals(-1, mHistograms.getPercentileNanos(TestViewModel.class, LifecycleTracer.EVENT_ON_DESTROY, 0.5));
+        assertEquals(-1, mHistograms.getPercentileNanos(AbstractViewModel.class, LifecycleTracer.EVENT_ON_CREATE, 0.5));
+
+        mHistograms.reset();
+        assertEquals(0, mHistograms.getCount(TestViewModel.class, LifecycleTracer.EVENT_ON_CREATE));
+    }
+
+    private static void assertWithinPrecision(final long expected, final long actual) {
+        assertTrue("expected about " + expected + " but was " + actual, actual >= expected && actual <= expected * 1.25);
+    }
+}
@@ -0,0 +1,141 @@
+package eu.inloop.viewmodel;
+
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class RequestCoalescerTest {
+
+    static final long TIMEOUT_MILLIS = 5000;
+
+    private RequestCoalescer mCoalescer;
+    private CountDownLatch mReleaseLoader;
+    private AtomicInteger mLoadCount;
+    private RequestCoalescer.Loader<String> mLoader;
+
+    @Before
+    public void setUp() {
+        mCoalescer = new RequestCoalescer();
+        mReleaseLoader = new CountDownLatch(1);
+        mLoadCount = new AtomicInteger();
+        mLoader = new RequestCoalescer.Loader<String>() {
+            @Override
+            public String load() throws Exception {
+                mLoadCount.incrementAndGet();
+                mReleaseLoader.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                return "value";
+            }
+        };
+    }
+
+    @Test
+    public void identicalRequestsLoadOnce() {
+        final RecordingCallback first = new RecordingCallback();
+        final RecordingCallback second = new RecordingCallback();
+        mCoalescer.request(new TestViewModel(), "key", mLoader, first);
+        mCoalescer.request(new TestViewModel(), "key", mLoader, second);
+        assertTrue(mCoalescer.isInFlight("key"));
+
+        mReleaseLoader.countDown();
+        idleMainLooperUntilDelivered(1, first, second);
+        assertEquals("[value]", first.mResults.toString());
+        assertEquals("[value]", second.mResults.toString());
+        assertEquals(1, mLoadCount.get());
+        assertFalse(mCoalescer.isInFlight("key"));
+    }
+
+    @Test
+    public void cancelledSubscriberIsNotNotified() {
+        final RecordingCallback cancelled = new RecordingCallback();
+        final RecordingCallback other = new RecordingCallback();
+        mCoalescer.request(new TestViewModel(), "key", mLoader, cancelled).cancel();
+        mCoalescer.request(new TestViewModel(), "key", mLoader, other);
+
+        mReleaseLoader.countDown();
+        idleMainLooperUntilDelivered(1, other);
+        assertEquals(0, cancelled.mResults.size());
+        assertEquals("[value]", other.mResults.toString());
+    }
+
+    @Test
+    public void loadIsCancelledWithoutSubscribers() {
+        final TestViewModel owner = new TestViewModel();
+        final RequestCoalescer.Subscription subscription = mCoalescer.request(owner, "key", mLoader, new RecordingCallback());
+        subscription.cancel();
+        assertTrue(subscription.isCancelled());
+        assertFalse(mCoalescer.isInFlight("key"));
+
+        mReleaseLoader.countDown();
+        final RecordingCallback next = new RecordingCallback();
+        mCoalescer.request(owner, "key", mLoader, next);
+        idleMainLooperUntilDelivered(1, next);
+        assertEquals("[value]", next.mResults.toString());
+    }
+
+    @Test
+    public void destroyedOwnerGetsCancelledSubscription() {
+        final TestViewModel owner = new TestViewModel();
+        owner.performDestroy();
+        assertTrue(mCoalescer.request(owner, "key", mLoader, new RecordingCallback()).isCancelled());
+        assertFalse(mCoalescer.isInFlight("key"));
+    }
+
+    /**
+     * Runs the main looper until every callback received the given number of results and errors, the loads
+     * finish on the pool of {@link ViewModelTask}.
+     */
+    static void idleMainLooperUntilDelivered(final int deliveries, @NonNull final RecordingCallback... callbacks) {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            boolean delivered = true;
+            for (final RecordingCallback callback : callbacks) {
+                delivered &= callback.mResults.size() + callback.mErrors.size() >= deliveries;
+            }
+            if (delivered) {
+                return;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    static class RecordingCallback implements RequestCoalescer.Callback<String> {
+
+        final ArrayList<String> mResults = new ArrayList<>();
+        final ArrayList<Exception> mErrors = new ArrayList<>();
+
+        @Override
+        public void onResult(@Nullable String value) {
+            mResults.add(value);
+        }
+
+        @Override
+        public void onError(@NonNull Exception exception) {
+            mErrors.add(exception);
+        }
+    }
+}
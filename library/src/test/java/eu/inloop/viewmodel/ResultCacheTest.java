@@ -0,0 +1,107 @@
+package eu.inloop.viewmodel;
+
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ResultCacheTest {
+
+    private ResultCache mCache;
+    private AtomicInteger mLoadCount;
+    private RequestCoalescer.Loader<String> mLoader;
+
+    @Before
+    public void setUp() {
+        mCache = new ResultCache(4);
+        mLoadCount = new AtomicInteger();
+        mLoader = new RequestCoalescer.Loader<String>() {
+            @Override
+            public String load() {
+                return "loaded" + mLoadCount.incrementAndGet();
+            }
+        };
+    }
+
+    @Test
+    public void freshValueIsDeliveredWithoutLoading() {
+        mCache.put("key", "cached", 60000);
+        final RequestCoalescerTest.RecordingCallback callback = new RequestCoalescerTest.RecordingCallback();
+
+        assertNull(mCache.load(new TestViewModel(), "key", 60000, mLoader, callback));
+        assertEquals("[cached]", callback.mResults.toString());
+        assertEquals(0, mLoadCount.get());
+    }
+
+    @Test
+    public void expiredValueIsDeliveredAndRefreshed() {
+        mCache.put("key", "cached", 0);
+        assertFalse(mCache.isFresh("key"));
+        final RequestCoalescerTest.RecordingCallback callback = new RequestCoalescerTest.RecordingCallback();
+
+        assertNotNull(mCache.load(new TestViewModel(), "key", 60000, mLoader, callback));
+        assertEquals("[cached]", callback.mResults.toString());
+
+        RequestCoalescerTest.idleMainLooperUntilDelivered(2, callback);
+        assertEquals("[cached, loaded1]", callback.mResults.toString());
+        assertEquals("loaded1", mCache.<String>get("key"));
+        assertTrue(mCache.isFresh("key"));
+    }
+
+    @Test
+    public void missingValueIsLoaded() {
+        final RequestCoalescerTest.RecordingCallback callback = new RequestCoalescerTest.RecordingCallback();
+        mCache.load(new TestViewModel(), "key", 60000, mLoader, callback);
+        RequestCoalescerTest.idleMainLooperUntilDelivered(1, callback);
+
+        assertEquals("[loaded1]", callback.mResults.toString());
+        assertEquals("loaded1", mCache.<String>get("key"));
+    }
+
+    @Test
+    public void trimMemoryDropsLeastRecentlyUsedEntries() {
+        for (int i = 0; i < 4; i++) {
+            mCache.put("key" + i, i, 60000);
+        }
+        mCache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertNull(mCache.get("key0"));
+        assertNull(mCache.get("key1"));
+        assertNotNull(mCache.get("key2"));
+        assertNotNull(mCache.get("key3"));
+
+        // repeated for the same level
+        mCache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertNotNull(mCache.get("key2"));
+        assertNotNull(mCache.get("key3"));
+
+        mCache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+        assertNull(mCache.get("key2"));
+        assertNull(mCache.get("key3"));
+    }
+
+    @Test
+    public void defaultCacheIsTrimmedByTheApplication() {
+        final Application application = Robolectric.buildActivity(TestActivity.class).setup().get().getApplication();
+        ResultCache.registerComponentCallbacks(application);
+        ResultCache.registerComponentCallbacks(application);
+        ResultCache.getInstance().put("key", "value", 60000);
+
+        application.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+        assertNull(ResultCache.getInstance().get("key"));
+    }
+}
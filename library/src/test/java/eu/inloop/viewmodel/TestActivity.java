@@ -0,0 +1,51 @@
+package eu.inloop.viewmodel;
+
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.FragmentActivity;
+
+/**
+ * Minimal host activity for ViewModels under test, retains its provider when recreated.
+ */
+public class TestActivity extends FragmentActivity implements IViewModelProvider {
+
+    private ViewModelProvider mViewModelProvider;
+    // Robolectric's shadow of isFinishing() allocates on every call, which the allocation tests would count
+    private boolean mFinishing;
+
+    @Override
+    public void finish() {
+        super.finish();
+        mFinishing = true;
+    }
+
+    @Override
+    public boolean isFinishing() {
+        return mFinishing;
+    }
+
+    @Override
+    protected void onCreate(@Nullable final Bundle savedInstanceState) {
+        // only available until onResume, see ViewModelBaseEmptyActivity
+        if (getLastCustomNonConfigurationInstance() != null) {
+            mViewModelProvider = ViewModelProvider.newInstance(this);
+        }
+        super.onCreate(savedInstanceState);
+    }
+
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return mViewModelProvider;
+    }
+
+    @NonNull
+    @Override
+    public ViewModelProvider getViewModelProvider() {
+        if (mViewModelProvider == null) {
+            mViewModelProvider = ViewModelProvider.newInstance(this);
+        }
+        return mViewModelProvider;
+    }
+}
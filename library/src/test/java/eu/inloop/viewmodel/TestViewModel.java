@@ -0,0 +1,13 @@
+package eu.inloop.viewmodel;
+
+import eu.inloop.viewmodel.base.CreateViewModelCallback;
+
+public class TestViewModel extends AbstractViewModel<IView> {
+
+    static final CreateViewModelCallback<IView, TestViewModel> FACTORY = new CreateViewModelCallback<IView, TestViewModel>() {
+        @Override
+        public TestViewModel onViewModelRequested() {
+            return new TestViewModel();
+        }
+    };
+}
@@ -0,0 +1,104 @@
+package eu.inloop.viewmodel;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertEquals;
+
+public class UpdateThrottlerTest {
+
+    // the sink posts the next value for this key while being called
+    private static final String KEY_REPOST = "repost";
+
+    private ManualFrameScheduler mFrameScheduler;
+    private ArrayList<String> mDelivered;
+    private ArrayList<Long> mDeliveryTimes;
+    private UpdateThrottler<Integer> mThrottler;
+
+    @Before
+    public void setUp() {
+        mFrameScheduler = new ManualFrameScheduler();
+        mDelivered = new ArrayList<>();
+        mDeliveryTimes = new ArrayList<>();
+        mThrottler = new UpdateThrottler<>(mFrameScheduler, new UpdateThrottler.Sink<Integer>() {
+            @Override
+            public void onUpdate(@NonNull String key, @NonNull Integer value) {
+                mDelivered.add(key + "=" + value);
+                mDeliveryTimes.add(mFrameScheduler.uptimeMillis());
+                if (KEY_REPOST.equals(key) && value < 3) {
+                    mThrottler.post(key, value + 1);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void conflatesUpdatesUntilNextFrame() {
+        mThrottler.post("a", 1);
+        mThrottler.post("b", 2);
+        mThrottler.post("a", 3);
+        assertEquals(0, mDelivered.size());
+
+        mFrameScheduler.advanceFrame();
+        assertEquals("[a=3, b=2]", mDelivered.toString());
+        assertEquals(0, mFrameScheduler.getPendingCallbackCount());
+    }
+
+    @Test
+    public void deliversOncePerFrame() {
+        mThrottler.post("a", 1);
+        mFrameScheduler.advanceFrame();
+        mThrottler.post("a", 2);
+        mThrottler.post("a", 3);
+        assertEquals(1, mFrameScheduler.getPendingCallbackCount());
+
+        mFrameScheduler.advanceFrame();
+        assertEquals("[a=1, a=3]", mDelivered.toString());
+    }
+
+    @Test
+    public void minIntervalSpacesDeliveries() {
+        mThrottler.setMinInterval(100);
+        mThrottler.post("a", 1);
+        mFrameScheduler.advanceFrame();
+        assertEquals(1, mDelivered.size());
+
+        mThrottler.post("a", 2);
+        mFrameScheduler.advanceTimeBy(96);
+        assertEquals(1, mDelivered.size());
+
+        mFrameScheduler.advanceFrame();
+        assertEquals("[a=1, a=2]", mDelivered.toString());
+        assertEquals(100, mDeliveryTimes.get(1) - mDeliveryTimes.get(0), ManualFrameScheduler.FRAME_MILLIS);
+    }
+
+    @Test
+    public void cancelDropsPendingValue() {
+        mThrottler.post("a", 1);
+        mThrottler.post("b", 2);
+        mThrottler.cancel("a");
+        mFrameScheduler.advanceFrame();
+        assertEquals("[b=2]", mDelivered.toString());
+
+        mThrottler.post("a", 3);
+        mThrottler.cancelAll();
+        mFrameScheduler.advanceFrame();
+        assertEquals("[b=2]", mDelivered.toString());
+    }
+
+    @Test
+    public void valuePostedBySinkIsDeliveredAtNextFrame() {
+        mThrottler.post(KEY_REPOST, 1);
+        mFrameScheduler.advanceFrame();
+        assertEquals("[repost=1]", mDelivered.toString());
+
+        mFrameScheduler.advanceFrame();
+        mFrameScheduler.advanceFrame();
+        mFrameScheduler.advanceFrame();
+        assertEquals("[repost=1, repost=2, repost=3]", mDelivered.toString());
+    }
+}
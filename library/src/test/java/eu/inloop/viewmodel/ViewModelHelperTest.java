@@ -0,0 +1,72 @@
+package eu.inloop.viewmodel;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class ViewModelHelperTest {
+
+    private TestActivity mActivity;
+    private ViewModelLeakWatcher mLeakWatcher;
+    private final AtomicInteger mDestroyTraces = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        mActivity = Robolectric.buildActivity(TestActivity.class).setup().get();
+        mLeakWatcher = new ViewModelLeakWatcher(null);
+        ViewModelHelper.setLeakWatcher(mLeakWatcher);
+        ViewModelHelper.setLifecycleTracer(new LifecycleTracer(new LifecycleTracer.MetricsSink() {
+            @Override
+            public void onLifecycleEvent(@NonNull Class<?> viewModelClass, int event, long durationNanos) {
+                if (event == LifecycleTracer.EVENT_ON_DESTROY) {
+                    mDestroyTraces.incrementAndGet();
+                }
+            }
+        }, false));
+    }
+
+    @After
+    public void tearDown() {
+        ViewModelHelper.setLeakWatcher(null);
+        ViewModelHelper.setLifecycleTracer(null);
+        mActivity.getViewModelProvider().removeAllViewModels();
+    }
+
+    @Test
+    public void removedScreenDestroysAndWatchesItsViewModel() {
+        final ViewModelHelper<IView, TestViewModel> helper = new ViewModelHelper<>();
+        helper.onCreate(mActivity, null, TestViewModel.FACTORY, null);
+
+        mActivity.finish();
+        helper.onDestroy(mActivity);
+        assertEquals(1, mDestroyTraces.get());
+        assertEquals(1, mLeakWatcher.getWatchedCount());
+    }
+
+    @Test
+    public void screenRemovedWhileItsViewModelIsEvictedWatchesTheEvictedInstance() {
+        final ViewModelHelper<IView, TestViewModel> helper = new ViewModelHelper<>();
+        // no view is bound, so the ViewModel can be evicted
+        helper.onCreate(mActivity, null, TestViewModel.FACTORY, null);
+        mActivity.getViewModelProvider().onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(0, mLeakWatcher.getWatchedCount());
+
+        mActivity.finish();
+        helper.onDestroy(mActivity);
+        // the eviction already destroyed it, there is nothing to trace
+        assertEquals(0, mDestroyTraces.get());
+        assertEquals(1, mLeakWatcher.getWatchedCount());
+    }
+}
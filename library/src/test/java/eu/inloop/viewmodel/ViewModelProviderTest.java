@@ -0,0 +1,196 @@
+package eu.inloop.viewmodel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.inloop.viewmodel.base.CreateViewModelCallback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ViewModelProviderTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private ViewModelProvider mProvider;
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.buildActivity(TestActivity.class).setup().get().getViewModelProvider();
+        mExecutor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+        mProvider.removeAllViewModels();
+    }
+
+    @Test
+    public void slowFactoryDoesNotBlockOtherScreens() throws Exception {
+        final CountDownLatch factoryStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFactory = new CountDownLatch(1);
+        final Future<AbstractViewModel<IView>> slowCreation = mExecutor.submit(new Callable<AbstractViewModel<IView>>() {
+            @Override
+            public AbstractViewModel<IView> call() {
+                return mProvider.getViewModel(1, new CreateViewModelCallback<IView, TestViewModel>() {
+                    @Override
+                    public TestViewModel onViewModelRequested() {
+                        factoryStarted.countDown();
+                        awaitUninterruptibly(releaseFactory);
+                        return new TestViewModel();
+                    }
+                });
+            }
+        });
+        assertTrue(factoryStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // would wait for the slow factory if it held the lock
+        final Future<AbstractViewModel<IView>> otherScreen = mExecutor.submit(new Callable<AbstractViewModel<IView>>() {
+            @Override
+            public AbstractViewModel<IView> call() {
+                return mProvider.getViewModel(2, TestViewModel.FACTORY);
+            }
+        });
+        assertSame(otherScreen.get(TIMEOUT_SECONDS, TimeUnit.SECONDS), mProvider.findViewModel(2));
+
+        releaseFactory.countDown();
+        assertSame(slowCreation.get(TIMEOUT_SECONDS, TimeUnit.SECONDS), mProvider.findViewModel(1));
+    }
+
+    @Test
+    public void concurrentRequestsCreateOneInstance() throws Exception {
+        final int threads = 8;
+        final AtomicInteger created = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CreateViewModelCallback<IView, TestViewModel> factory = new CreateViewModelCallback<IView, TestViewModel>() {
+            @Override
+            public TestViewModel onViewModelRequested() {
+                created.incrementAndGet();
+                return new TestViewModel();
+            }
+        };
+        @SuppressWarnings("unchecked")
+        final Future<AbstractViewModel<IView>>[] results = new Future[threads];
+        for (int i = 0; i < threads; i++) {
+            results[i] = mExecutor.submit(new Callable<AbstractViewModel<IView>>() {
+                @Override
+                public AbstractViewModel<IView> call() throws Exception {
+                    start.await();
+                    return mProvider.getViewModel(1, factory);
+                }
+            });
+        }
+        start.countDown();
+        final AbstractViewModel<IView> first = results[0].get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        for (int i = 1; i < threads; i++) {
+            assertSame(first, results[i].get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void removedWhileCreatingIsNotCached() throws Exception {
+        final CountDownLatch factoryStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFactory = new CountDownLatch(1);
+        final Future<AbstractViewModel<IView>> creation = mExecutor.submit(new Callable<AbstractViewModel<IView>>() {
+            @Override
+            public AbstractViewModel<IView> call() {
+                return mProvider.getViewModel(1, new CreateViewModelCallback<IView, TestViewModel>() {
+                    @Override
+                    public TestViewModel onViewModelRequested() {
+                        factoryStarted.countDown();
+                        awaitUninterruptibly(releaseFactory);
+                        return new TestViewModel();
+                    }
+                });
+            }
+        });
+        assertTrue(factoryStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        mProvider.remove(1);
+        releaseFactory.countDown();
+
+        creation.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNull(mProvider.findViewModel(1));
+        assertNotSame(creation.get(), mProvider.getViewModel(1, TestViewModel.FACTORY));
+    }
+
+    @Test
+    public void removeKeepsOtherEntriesVisible() {
+        for (int i = 1; i <= 100; i++) {
+            mProvider.getViewModel(i, TestViewModel.FACTORY);
+        }
+        for (int i = 1; i <= 100; i += 2) {
+            mProvider.remove(i);
+        }
+        assertEquals(50, mProvider.getViewModelCount());
+        for (int i = 2; i <= 100; i += 2) {
+            assertTrue(mProvider.findViewModel(i) != null);
+        }
+    }
+
+    @Test
+    public void cancelledPrefetchIsDestroyedOutsideTheLock() {
+        final AtomicBoolean otherScreenCreated = new AtomicBoolean();
+        final long screenId = mProvider.prefetchViewModel(new CreateViewModelCallback<IView, TestViewModel>() {
+            @Override
+            public TestViewModel onViewModelRequested() {
+                return new TestViewModel() {
+                    @Override
+                    public void onDestroy() {
+                        super.onDestroy();
+                        // would wait for the lock held by cancelPrefetch
+                        final Future<AbstractViewModel<IView>> otherScreen = mExecutor.submit(new Callable<AbstractViewModel<IView>>() {
+                            @Override
+                            public AbstractViewModel<IView> call() {
+                                return mProvider.getViewModel(2, TestViewModel.FACTORY);
+                            }
+                        });
+                        try {
+                            otherScreenCreated.set(otherScreen.get(TIMEOUT_SECONDS, TimeUnit.SECONDS) != null);
+                        } catch (Exception ex) {
+                            otherScreenCreated.set(false);
+                        }
+                    }
+                };
+            }
+        }, null, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        assertTrue(mProvider.findViewModel(screenId).isCreated());
+
+        mProvider.cancelPrefetch(screenId);
+        assertNull(mProvider.findViewModel(screenId));
+        assertTrue(otherScreenCreated.get());
+    }
+
+    private static void awaitUninterruptibly(final CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package eu.inloop.viewmodel;
+
+import android.os.Looper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ViewModelTaskTest {
+
+    private static final int PROGRESS_UPDATES = 1000;
+
+    @Test
+    public void progressPublishedFasterThanDeliveredIsConflated() throws InterruptedException {
+        final CountDownLatch published = new CountDownLatch(1);
+        final ArrayList<Integer> delivered = new ArrayList<>();
+        final ArrayList<String> results = new ArrayList<>();
+        final ViewModelTask<Integer, String> task = new ViewModelTask<Integer, String>() {
+            @Override
+            protected String doInBackground() {
+                for (int i = 0; i < PROGRESS_UPDATES; i++) {
+                    publishProgress(i);
+                }
+                published.countDown();
+                return "done"; //NON-NLS
+            }
+
+            @Override
+            protected void onProgressUpdate(@Nullable Integer progress) {
+                delivered.add(progress);
+            }
+
+            @Override
+            protected void onResult(@Nullable String result) {
+                results.add(result);
+            }
+        };
+        task.start(null, ViewModelTask.PRIORITY_DEFAULT);
+        assertTrue(published.await(RequestCoalescerTest.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        final long deadline = System.currentTimeMillis() + RequestCoalescerTest.TIMEOUT_MILLIS;
+        while (results.isEmpty() && System.currentTimeMillis() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(10);
+        }
+        // the main thread didn't run while the task was publishing, only the latest progress is left
+        assertEquals("[" + (PROGRESS_UPDATES - 1) + "]", delivered.toString()); //NON-NLS
+        assertEquals("[done]", results.toString()); //NON-NLS
+    }
+}
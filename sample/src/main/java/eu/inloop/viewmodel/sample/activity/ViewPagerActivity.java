@@ -1,39 +1,143 @@
 package eu.inloop.viewmodel.sample.activity;
 
+import android.os.AsyncTask;
 import android.os.Bundle;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentStatePagerAdapter;
 import androidx.viewpager.widget.ViewPager;
+import eu.inloop.viewmodel.ViewModelProvider;
+import eu.inloop.viewmodel.base.CreateViewModelCallback;
 import eu.inloop.viewmodel.base.ViewModelBaseEmptyActivity;
 import eu.inloop.viewmodel.sample.R;
 import eu.inloop.viewmodel.sample.fragment.PagerFragment;
+import eu.inloop.viewmodel.sample.viewmodel.PageModel;
+import eu.inloop.viewmodel.sample.viewmodel.view.IPageView;
 
 public class ViewPagerActivity extends ViewModelBaseEmptyActivity {
 
+    private static final int PREFETCH_DISTANCE = 1;
+    private static final String STATE_INSTANTIATED_PAGES = "instantiated_pages";
+    private static final String STATE_PREFETCHED_SCREEN_IDS = "prefetched_screen_ids";
+
+    private TestPagerAdapter mAdapter;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_pager);
 
         final ViewPager viewPager = (ViewPager) findViewById(R.id.pager);
-        viewPager.setAdapter(new TestPagerAdapter(getSupportFragmentManager()));
+        mAdapter = new TestPagerAdapter(getSupportFragmentManager(), getViewModelProvider());
+        if (savedInstanceState != null) {
+            mAdapter.restoreInstantiatedPages(savedInstanceState.getBooleanArray(STATE_INSTANTIATED_PAGES));
+            // prefetched ViewModels live in the provider, which is only retained over a configuration change
+            if (getLastCustomNonConfigurationInstance() != null) {
+                mAdapter.restorePrefetchedScreenIds(savedInstanceState.getLongArray(STATE_PREFETCHED_SCREEN_IDS));
+            }
+        }
+        viewPager.setAdapter(mAdapter);
+        // the ViewPager instantiates the adjacent pages itself, warm up the ones behind them too
+        final int prefetchDistance = viewPager.getOffscreenPageLimit() + PREFETCH_DISTANCE;
+        viewPager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+            @Override
+            public void onPageSelected(int position) {
+                mAdapter.prefetchAround(position, prefetchDistance);
+            }
+        });
+        // onPageSelected() is not called for the initial page
+        mAdapter.prefetchAround(viewPager.getCurrentItem(), prefetchDistance);
+    }
+
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putBooleanArray(STATE_INSTANTIATED_PAGES, mAdapter.getInstantiatedPages());
+        outState.putLongArray(STATE_PREFETCHED_SCREEN_IDS, mAdapter.getPrefetchedScreenIds());
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (!isChangingConfigurations()) {
+            // no new instance of this activity will claim them
+            mAdapter.cancelPrefetches();
+        }
     }
 
     private final static class TestPagerAdapter extends FragmentStatePagerAdapter {
-        public TestPagerAdapter(FragmentManager fm) {
+
+        private final ViewModelProvider mViewModelProvider;
+        private long[] mPrefetchedScreenIds = new long[getCount()];
+        // pages that already have a fragment, or its saved state, and so their own ViewModel
+        private boolean[] mInstantiatedPages = new boolean[getCount()];
+
+        public TestPagerAdapter(FragmentManager fm, ViewModelProvider viewModelProvider) {
             super(fm, BEHAVIOR_RESUME_ONLY_CURRENT_FRAGMENT);
+            mViewModelProvider = viewModelProvider;
         }
 
         @Override
         public Fragment getItem(int position) {
-            return PagerFragment.newInstance(position);
+            final long screenId = mPrefetchedScreenIds[position];
+            mPrefetchedScreenIds[position] = 0;
+            mInstantiatedPages[position] = true;
+            return PagerFragment.newInstance(position, screenId);
+        }
+
+        boolean[] getInstantiatedPages() {
+            return mInstantiatedPages;
+        }
+
+        void restoreInstantiatedPages(@Nullable boolean[] instantiatedPages) {
+            if (instantiatedPages != null && instantiatedPages.length == getCount()) {
+                mInstantiatedPages = instantiatedPages;
+            }
+        }
+
+        long[] getPrefetchedScreenIds() {
+            return mPrefetchedScreenIds;
+        }
+
+        void restorePrefetchedScreenIds(@Nullable long[] prefetchedScreenIds) {
+            if (prefetchedScreenIds != null && prefetchedScreenIds.length == getCount()) {
+                mPrefetchedScreenIds = prefetchedScreenIds;
+            }
+        }
+
+        void cancelPrefetches() {
+            for (int i = 0; i < getCount(); i++) {
+                if (mPrefetchedScreenIds[i] != 0) {
+                    mViewModelProvider.cancelPrefetch(mPrefetchedScreenIds[i]);
+                    mPrefetchedScreenIds[i] = 0;
+                }
+            }
         }
 
         @Override
         public int getCount() {
             return 10;
         }
+
+        void prefetchAround(int position, int distance) {
+            for (int i = 0; i < getCount(); i++) {
+                final boolean inWindow = Math.abs(i - position) <= distance;
+                if (inWindow && mPrefetchedScreenIds[i] == 0 && !mInstantiatedPages[i]) {
+                    mPrefetchedScreenIds[i] = mViewModelProvider.prefetchViewModel(new CreateViewModelCallback<IPageView, PageModel>() {
+                        @Override
+                        public PageModel onViewModelRequested() {
+                            final PageModel recycled = mViewModelProvider.obtainRecycledViewModel(PageModel.class);
+                            return recycled != null ? recycled : new PageModel();
+                        }
+                    }, PagerFragment.createArguments(i), AsyncTask.THREAD_POOL_EXECUTOR);
+                } else if (!inWindow && mPrefetchedScreenIds[i] != 0) {
+                    mViewModelProvider.cancelPrefetch(mPrefetchedScreenIds[i]);
+                    mPrefetchedScreenIds[i] = 0;
+                }
+            }
+        }
     }
 }
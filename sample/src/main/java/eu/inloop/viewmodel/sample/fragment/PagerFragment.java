@@ -7,6 +7,7 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.Nullable;
+import eu.inloop.viewmodel.ViewModelHelper;
 import eu.inloop.viewmodel.base.ViewModelBaseFragment;
 import eu.inloop.viewmodel.sample.R;
 import eu.inloop.viewmodel.sample.viewmodel.PageModel;
@@ -14,14 +15,22 @@ import eu.inloop.viewmodel.sample.viewmodel.view.IPageView;
 
 public class PagerFragment extends ViewModelBaseFragment<IPageView, PageModel> {
 
-    public static PagerFragment newInstance(int position) {
-        final Bundle bundle = new Bundle();
-        bundle.putInt("position", position);
+    public static PagerFragment newInstance(int position, long prefetchedScreenId) {
+        final Bundle bundle = createArguments(position);
+        if (prefetchedScreenId != 0) {
+            ViewModelHelper.putPrefetchedScreenId(bundle, prefetchedScreenId);
+        }
         final PagerFragment fragment = new PagerFragment();
         fragment.setArguments(bundle);
         return fragment;
     }
 
+    public static Bundle createArguments(int position) {
+        final Bundle bundle = new Bundle();
+        bundle.putInt("position", position);
+        return bundle;
+    }
+
     @Nullable
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -37,6 +46,7 @@ public class PagerFragment extends ViewModelBaseFragment<IPageView, PageModel> {
     @Nullable
     @Override
     public PageModel createViewModel() {
-        return new PageModel();
+        final PageModel recycled = obtainRecycledViewModel(PageModel.class);
+        return recycled != null ? recycled : new PageModel();
     }
 }
@@ -11,11 +11,12 @@ import android.widget.ListView;
 import android.widget.TextView;
 
 import java.util.ArrayList;
-import java.util.List;
 
 import androidx.annotation.Nullable;
 import butterknife.BindView;
 import butterknife.ButterKnife;
+import eu.inloop.viewmodel.ListUpdate;
+import eu.inloop.viewmodel.ListUpdateApplier;
 import eu.inloop.viewmodel.base.ViewModelBaseFragment;
 import eu.inloop.viewmodel.sample.R;
 import eu.inloop.viewmodel.sample.activity.ViewPagerActivity;
@@ -32,6 +33,7 @@ public class UserListFragment extends ViewModelBaseFragment<IUserListView, UserL
     ListView mListview;
 
     private ArrayAdapter<String> mAdapter;
+    private final ListUpdateApplier<String> mUsers = new ListUpdateApplier<>();
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -89,10 +91,14 @@ public class UserListFragment extends ViewModelBaseFragment<IUserListView, UserL
     }
 
     @Override
-    public void showUsers(List<String> users) {
+    public void showUsers(ListUpdate<String> users) {
+        //ListView has no item animations, only skip the refresh when nothing changed
+        if (!mUsers.apply(users)) {
+            return;
+        }
         mAdapter.setNotifyOnChange(false);
         mAdapter.clear();
-        mAdapter.addAll(users);
+        mAdapter.addAll(mUsers.getList());
         mAdapter.setNotifyOnChange(true);
         mAdapter.notifyDataSetChanged();
     }
@@ -1,7 +1,13 @@
 package eu.inloop.viewmodel.sample.viewmodel;
 
 import eu.inloop.viewmodel.AbstractViewModel;
+import eu.inloop.viewmodel.RecyclableViewModel;
 import eu.inloop.viewmodel.sample.viewmodel.view.IPageView;
 
-public class PageModel extends AbstractViewModel<IPageView> {
+public class PageModel extends AbstractViewModel<IPageView> implements RecyclableViewModel {
+
+    @Override
+    public void onRecycle() {
+        // no state to reset
+    }
 }
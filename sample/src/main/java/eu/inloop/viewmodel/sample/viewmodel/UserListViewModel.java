@@ -1,25 +1,64 @@
 package eu.inloop.viewmodel.sample.viewmodel;
 
-import android.os.AsyncTask;
 import android.os.Bundle;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import eu.inloop.viewmodel.AbstractViewModel;
+import eu.inloop.viewmodel.ListState;
+import eu.inloop.viewmodel.ListUpdate;
+import eu.inloop.viewmodel.RequestCoalescer;
+import eu.inloop.viewmodel.ResultCache;
+import eu.inloop.viewmodel.ViewCommand;
+import eu.inloop.viewmodel.ViewModelTask;
+import eu.inloop.viewmodel.ViewState;
+import eu.inloop.viewmodel.annotation.SaveState;
 import eu.inloop.viewmodel.sample.viewmodel.view.IUserListView;
 
 public class UserListViewModel extends AbstractViewModel<IUserListView> {
 
     private static final int TOTAL_USERS = 7;
-    private List<String> mLoadedUsers;
+    private static final String VIEW_PROGRESS = "progress";
+    private static final String VIEW_USERS = "users";
+    private static final String CACHE_KEY_USERS = "userlist";
+    private static final long CACHE_TIME_TO_LIVE = 60 * 1000;
+
+    //saved and restored by the generated UserListViewModel_StateBinding
+    @SaveState("userlist")
+    List<String> mLoadedUsers;
+
+    //the view receives only the changes between the published versions of the list
+    private final ListState<String> mUsersState = new ListState<>(this, new ListState.Listener<String>() {
+        @Override
+        public void onListUpdated(@NonNull final ListUpdate<String> update) {
+            runOnView(VIEW_USERS, new ViewCommand<IUserListView>() {
+                @Override
+                public void execute(@NonNull IUserListView view) {
+                    view.showUsers(update);
+                }
+            });
+        }
+    });
+
+    //loading progress, null when the progress is hidden
+    private final ViewState<IUserListView, Float> mProgressState = new ViewState<>(this, VIEW_PROGRESS, new ViewState.Renderer<IUserListView, Float>() {
+        @Override
+        public void render(@NonNull IUserListView view, @Nullable Float progress) {
+            if (progress != null) {
+                view.showLoading(progress);
+            } else {
+                view.hideProgress();
+            }
+        }
+    });
 
     //Don't persist state variables
-    private boolean mLoadingUsers;
-
-    private float mCurrentLoadingProgress = 0;
+    @Nullable
+    private RequestCoalescer.Subscription mUsersRefresh;
 
     @Override
     public void onCreate(@Nullable Bundle arguments, @Nullable Bundle savedInstanceState) {
@@ -27,7 +66,12 @@ public class UserListViewModel extends AbstractViewModel<IUserListView> {
 
         //this will be only not null in case the application was killed due to low memory
         if (savedInstanceState != null) {
-            mLoadedUsers = savedInstanceState.getStringArrayList("userlist");
+            UserListViewModel_StateBinding.restore(this, savedInstanceState);
+            if (mLoadedUsers != null) {
+                showUsers();
+            }
+        } else {
+            loadUsers();
         }
     }
 
@@ -35,61 +79,51 @@ public class UserListViewModel extends AbstractViewModel<IUserListView> {
     public void onBindView(@NonNull IUserListView view) {
         super.onBindView(view);
 
-        //downloading list of users
-        if (mLoadedUsers != null) {
-            view.showUsers(mLoadedUsers);
-        } else if (mLoadingUsers) {
-            view.showLoading(mCurrentLoadingProgress);
-        } else {
+        //the current state is replayed to the view by runOnView(), only start downloading the list of users
+        if (mLoadedUsers == null && mUsersRefresh == null) {
             loadUsers();
         }
     }
 
     private void loadUsers() {
-        mLoadingUsers = true;
-        mCurrentLoadingProgress = 0;
-        if (getView() != null) {
-            getView().showLoading(mCurrentLoadingProgress);
-        }
-        new AsyncTask<Void, Float, List<String>>() {
-
+        //a recently closed screen shows the cached users right away, they are downloaded again once expired
+        mUsersRefresh = ResultCache.getInstance().load(this, CACHE_KEY_USERS, CACHE_TIME_TO_LIVE, new RequestCoalescer.Loader<List<String>>() {
             @Override
-            protected List<String> doInBackground(Void... voids) {
+            public List<String> load() throws InterruptedException {
                 final List<String> list = new ArrayList<>();
                 for (int i = 0; i < TOTAL_USERS; i++) {
                     list.add("User " + i);
-
-                    try {
-                        Thread.sleep(1000);
-                    } catch (InterruptedException e) {
-                        //
-                    }
-                    publishProgress((i+1) / (float)TOTAL_USERS);
+                    Thread.sleep(1000);
+                    //rendered on the main thread, only the latest progress if the view falls behind
+                    mProgressState.set((i+1) / (float)TOTAL_USERS);
                 }
 
-                return list;
+                //cached values are shared between ViewModels
+                return Collections.unmodifiableList(list);
             }
-
+        }, new RequestCoalescer.Callback<List<String>>() {
             @Override
-            protected void onProgressUpdate(Float... values) {
-                super.onProgressUpdate(values);
-                mCurrentLoadingProgress = values[0];
-                if (getView() != null) {
-                    getView().showLoading(mCurrentLoadingProgress);
+            public void onResult(@Nullable List<String> users) {
+                //the cached users are delivered before load() returns, mUsersRefresh is only set for the download
+                if (mUsersRefresh != null) {
+                    mUsersRefresh = null;
+                    mProgressState.set(null);
+                }
+                if (users != null) {
+                    mLoadedUsers = new ArrayList<>(users);
+                    showUsers();
                 }
             }
 
             @Override
-            protected void onPostExecute(List<String> s) {
-                super.onPostExecute(s);
-                mLoadedUsers = s;
-                mLoadingUsers = false;
-                if (getView() != null) {
-                    getView().showUsers(s);
-                    getView().hideProgress();
-                }
+            public void onError(@NonNull Exception exception) {
+                mUsersRefresh = null;
+                mProgressState.set(null);
             }
-        }.execute();
+        });
+        if (mUsersRefresh != null) {
+            mProgressState.set(0f);
+        }
     }
 
     public void deleteUser(final int position) {
@@ -97,46 +131,39 @@ public class UserListViewModel extends AbstractViewModel<IUserListView> {
             return;
         }
         mLoadedUsers.set(position, "Deleting in 5 seconds...");
-        if (getView() != null) {
-            getView().showUsers(mLoadedUsers);
-        }
+        showUsers();
 
         final String itemToDelete = mLoadedUsers.get(position);
-        new AsyncTask<Void, Void, Void>() {
+        executeTask(new ViewModelTask<Void, Void>() {
 
             @Override
-            protected Void doInBackground(Void... voids) {
-                try {
-                    Thread.sleep(5000);
-                } catch (InterruptedException e) {
-                   //
-                }
-                mLoadedUsers.remove(itemToDelete);
+            protected Void doInBackground() throws InterruptedException {
+                Thread.sleep(5000);
                 return null;
             }
 
             @Override
-            protected void onPostExecute(Void aVoid) {
-                super.onPostExecute(aVoid);
-                if (getView() != null) {
-                    getView().showUsers(mLoadedUsers);
-                }
+            protected void onResult(Void result) {
+                // the list is only touched on the main thread
+                mLoadedUsers.remove(itemToDelete);
+                showUsers();
+                cacheUsers();
             }
-        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }, ViewModelTask.PRIORITY_LOW);
+    }
+
+    private void cacheUsers() {
+        ResultCache.getInstance().put(CACHE_KEY_USERS, Collections.unmodifiableList(new ArrayList<>(mLoadedUsers)), CACHE_TIME_TO_LIVE);
+    }
+
+    private void showUsers() {
+        mUsersState.submitList(mLoadedUsers);
     }
 
 
     @Override
     public void onSaveInstanceState(@NonNull final Bundle bundle) {
         super.onSaveInstanceState(bundle);
-        if (mLoadedUsers != null) {
-            bundle.putStringArrayList("userlist", new ArrayList<>(mLoadedUsers));
-        }
-    }
-
-    @Override
-    public void onDestroy() {
-        super.onDestroy();
-        //use this to cancel any planned requests
+        UserListViewModel_StateBinding.save(this, bundle);
     }
 }
@@ -1,13 +1,12 @@
 package eu.inloop.viewmodel.sample.viewmodel.view;
 
-import java.util.List;
-
 import eu.inloop.viewmodel.IView;
+import eu.inloop.viewmodel.ListUpdate;
 
 public interface IUserListView extends IView {
 
     void showLoading(float progress);
     void hideProgress();
 
-    void showUsers(List<String> users);
+    void showUsers(ListUpdate<String> users);
 }